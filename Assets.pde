@@ -0,0 +1,104 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class Assets {
+  // Loads each font and image from the data folder the first time it is asked
+  // for and then hands out the same object to every component that needs it.
+  // Shared objects must be treated as read-only by the components using them.
+
+  HashMap<String, PFont> fonts;
+  HashMap<String, PImage> images;
+  ArrayList<String> report;
+
+  Assets() {
+    fonts = new HashMap<String, PFont>();
+    images = new HashMap<String, PImage>();
+    report = new ArrayList<String>();
+  }
+
+  PFont getFont(String path) {
+    PFont font = fonts.get(path);
+    if (font == null) {
+      // Load font and measure size of glyph images held in memory
+      long startNanos = System.nanoTime();
+      font = loadFont(path);
+      long loadNanos = System.nanoTime() - startNanos;
+      long memoryBytes = 0;
+      for (int i = 0; i < font.getGlyphCount(); i++) {
+        PImage glyphImage = font.getGlyph(i).image;
+        if (glyphImage != null) {
+          memoryBytes += 4L * glyphImage.width * glyphImage.height;
+        }
+      }
+      fonts.put(path, font);
+      logLoad(path, loadNanos, memoryBytes);
+    }
+    return font;
+  }
+
+  PFont getFont(String path, int size) {
+    // Shipped font made again at another size from the installed font, or null if it isn't installed
+    String key = path + "@" + size;
+    PFont font = fonts.get(key);
+    if (font == null) {
+      Font installed = (Font) getFont(path).findNative();
+      if (installed == null) {
+        return null;
+      }
+      font = new PFont(installed.deriveFont((float) size), true);
+      fonts.put(key, font);
+    }
+    return font;
+  }
+
+  PImage getImage(String path) {
+    PImage image = images.get(path);
+    if (image == null) {
+      // Load image and measure size of its pixel array
+      long startNanos = System.nanoTime();
+      image = loadImage(path);
+      long loadNanos = System.nanoTime() - startNanos;
+      images.put(path, image);
+      logLoad(path, loadNanos, 4L * image.width * image.height);
+    }
+    return image;
+  }
+
+  boolean isInstalled(String fontPath) {
+    // Whether the font a shipped bitmap font was made from is installed, so that it can be made at other sizes
+    return getFont(fontPath).findNative() != null;
+  }
+
+  void logLoad(String path, long loadNanos, long memoryBytes) {
+    long fileBytes = dataFile(path).length();
+    report.add(String.format("%-40s %8.2f ms %10d bytes on disk %10d bytes in memory", path, loadNanos/1.0e6, fileBytes, memoryBytes));
+  }
+
+  void printReport() {
+    // Lists every asset loaded so far with its load time and size
+    println("Assets loaded: " + report.size());
+    for (String line : report) {
+      println(line);
+    }
+  }
+}
@@ -0,0 +1,187 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+interface AudioSink {
+  // Somewhere to send sound cues, as 16-bit mono PCM in the format of AudioCues
+  void play(byte[] pcm);
+}
+
+class NullSink implements AudioSink {
+  // Discards cues, for when sound is turned off or there is no audio device
+
+  public void play(byte[] pcm) {
+  }
+}
+
+class LineSink implements AudioSink {
+  // Plays cues through an audio line which is opened and started once, so
+  // that nothing has to be set up when a deadline arrives. Clips are written
+  // on a thread of their own, one after another.
+
+  final int BUFFER_BYTES = 8820;
+
+  SourceDataLine line;
+  ExecutorService player;
+
+  LineSink(AudioFormat format) throws LineUnavailableException {
+    line = AudioSystem.getSourceDataLine(format);
+    line.open(format, BUFFER_BYTES);
+    line.start();
+    player = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "Audio cues");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public void play(final byte[] pcm) {
+    player.execute(new Runnable() {
+      public void run() {
+        line.write(pcm, 0, pcm.length);
+      }
+    });
+  }
+}
+
+class AudioCues {
+  // Sounds played at game warnings and at the end of each game, so that
+  // players can hear the clock from anywhere on the ice. Clips are loaded
+  // from data/sounds/warning.wav and data/sounds/end.wav if present (and
+  // decoded once), otherwise a pip for each warning so far and a horn are
+  // synthesised. Cues are played straight from the deadline timer thread.
+
+  final float SAMPLE_RATE = 44100;
+  final float PIP_FREQUENCY = 880;
+  final float[] HORN_FREQUENCIES = {
+    220, 277, 330
+  };
+
+  AudioFormat format;
+  AudioSink sink;
+  byte[][] warningClips;
+  byte[] endClip;
+
+  AudioCues(boolean isEnabled, int nWarnings) {
+    format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+
+    // Fall back to silence if sound is off or can't be played
+    sink = new NullSink();
+    if (isEnabled) {
+      try {
+        sink = new LineSink(format);
+      } catch (Exception e) {
+        println("Could not open audio line, sound cues are off: " + e);
+      }
+    }
+
+    // Prepare every clip in advance
+    byte[] warningFile = loadClip("sounds/warning.wav");
+    warningClips = new byte[nWarnings][];
+    for (int i = 0; i < nWarnings; i++) {
+      warningClips[i] = warningFile != null ? warningFile : pips(i+1);
+    }
+    endClip = loadClip("sounds/end.wav");
+    if (endClip == null) {
+      endClip = horn();
+    }
+  }
+
+  byte[] horn() {
+    // Chord with a few harmonics, faded in and out
+    int nSamples = int(1.2 * SAMPLE_RATE);
+    float[] samples = new float[nSamples];
+    for (int i = 0; i < nSamples; i++) {
+      float t = i / SAMPLE_RATE;
+      for (float f : HORN_FREQUENCIES) {
+        for (int h = 1; h <= 3; h++) {
+          samples[i] += sin(TWO_PI*f*h*t) / (h * HORN_FREQUENCIES.length);
+        }
+      }
+    }
+    return toPcm(samples, 0.05);
+  }
+
+  byte[] loadClip(String path) {
+    // Decodes a sound file into the line's format, or returns null if missing or unreadable
+    File file = dataFile(path);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      AudioInputStream stream = AudioSystem.getAudioInputStream(format, AudioSystem.getAudioInputStream(file));
+      try {
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int n = stream.read(chunk);
+        while (n > 0) {
+          pcm.write(chunk, 0, n);
+          n = stream.read(chunk);
+        }
+        return pcm.toByteArray();
+      } finally {
+        stream.close();
+      }
+    } catch (Exception e) {
+      println("Could not decode " + path + ", using built-in sound: " + e);
+      return null;
+    }
+  }
+
+  byte[] pips(int count) {
+    // Short beeps, one for each warning given so far
+    int pipSamples = int(0.15 * SAMPLE_RATE);
+    int gapSamples = int(0.1 * SAMPLE_RATE);
+    float[] samples = new float[count*(pipSamples+gapSamples)];
+    for (int p = 0; p < count; p++) {
+      int start = p*(pipSamples+gapSamples);
+      for (int i = 0; i < pipSamples; i++) {
+        samples[start+i] = sin(TWO_PI*PIP_FREQUENCY*i/SAMPLE_RATE);
+      }
+    }
+    return toPcm(samples, 0.005);
+  }
+
+  void play(int kind, int level) {
+    if (kind == GAME_WARNING && level <= warningClips.length) {
+      sink.play(warningClips[level-1]);
+    } else if (kind == GAME_END) {
+      sink.play(endClip);
+    }
+  }
+
+  byte[] toPcm(float[] samples, float fadeSeconds) {
+    // Converts to 16-bit little-endian samples at half volume, with a linear fade at each end to avoid clicks
+    int fadeSamples = max(1, int(fadeSeconds * SAMPLE_RATE));
+    byte[] pcm = new byte[2*samples.length];
+    for (int i = 0; i < samples.length; i++) {
+      float fade = min(1, min(i, samples.length-1-i) / (float) fadeSamples);
+      int value = int(0.5 * fade * samples[i] * Short.MAX_VALUE);
+      pcm[2*i] = (byte) value;
+      pcm[2*i+1] = (byte) (value >> 8);
+    }
+    return pcm;
+  }
+}
@@ -0,0 +1,276 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class Benchmark {
+  // Times a whole frame and the main fixture operations, so that changes to
+  // rendering or data structures can be measured and regressions spotted.
+  // Frames are drawn into offscreen buffers of each renderer at several
+  // screen sizes and numbers of simultaneous games, by pointing the sketch's
+  // graphics and size at the buffer while the interface is rebuilt and
+  // drawn. Each case is run for a warm-up period before being timed, and
+  // the results are written to benchmarks.csv in the sketch folder, along
+  // with the number of bytes allocated on each run (where the JVM can
+  // count them), which should be zero for steady-state drawing code.
+  // Processing can only make OpenGL buffers for a window which is itself
+  // drawn with OpenGL, so P2D frames are only timed when renderer is set to
+  // P2D in prefs.csv. A renderer which can't be timed gets a 'skipped' row
+  // saying why, rather than no row at all.
+
+  final int WARMUP_MILLIS = 500;
+  final int MEASURE_MILLIS = 1000;
+  final String[] RENDERERS = {
+    JAVA2D, P2D
+  };
+  final int[][] SIZES = {
+    {
+      1366, 768
+    }
+    , {
+      1920, 1080
+    }
+    , {
+      3840, 2160
+    }
+  };
+  final int[][] SESSIONS = {
+    {
+      1, 4
+    }
+    , {
+      2, 8
+    }
+    , {
+      3, 14
+    }
+    , {
+      6, 60
+    }
+  };
+  final int[] SIM_THRESHOLDS = {
+    5, 8, 20, 28, 40
+  };
+
+  String[] results;
+  com.sun.management.ThreadMXBean threads;
+
+  Benchmark() {
+    results = new String[] {
+      "benchmark,renderer,width,height,nSim,iterations,mean_us,best_us,bytes_allocated"
+    };
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      threads = (com.sun.management.ThreadMXBean) bean;
+      threads.setThreadAllocatedMemoryEnabled(true);
+    }
+  }
+
+  long allocatedBytes() {
+    // Returns bytes allocated by this thread so far, or -1 if they can't be counted
+    return threads == null ? -1 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  void measure(String name, String renderer, int w, int h, int nSim, Runnable operation) {
+    // Runs operation repeatedly, first to warm up and then to time it
+    long warmupEnd = System.nanoTime() + WARMUP_MILLIS*1000000L;
+    while (System.nanoTime() < warmupEnd) {
+      operation.run();
+    }
+    int iterations = 0;
+    long total = 0;
+    long best = Long.MAX_VALUE;
+    long measureEnd = System.nanoTime() + MEASURE_MILLIS*1000000L;
+    long startBytes = allocatedBytes();
+    while (System.nanoTime() < measureEnd) {
+      long start = System.nanoTime();
+      operation.run();
+      long time = System.nanoTime() - start;
+      total += time;
+      best = Math.min(best, time);
+      iterations++;
+    }
+    long bytes = startBytes < 0 ? -1 : (allocatedBytes() - startBytes) / iterations;
+    String result = String.format("%s,%s,%d,%d,%d,%d,%.1f,%.1f,%d", name, renderer.substring(renderer.lastIndexOf('.')+1), w, h, nSim, iterations, total/1000.0/iterations, best/1000.0, bytes);
+    results = append(results, result);
+    println(result);
+  }
+
+  void measureFixtures() {
+    // Operations on the largest shipped list
+    final int nSim = 3;
+    final int nTeams = 30;
+    final String fixtureFile = "nsim-nteams/" + nSim + "-" + nTeams + ".csv";
+    final Fixtures fixtures = fixtureLoader.loadShipped(nSim, nTeams);
+    final Random random = new Random(1);
+    measure("loadTable", "", 0, 0, nSim, new Runnable() {
+      public void run() {
+        new Fixtures(loadTable(fixtureFile));
+      }
+    });
+    measure("bundle", "", 0, 0, nSim, new Runnable() {
+      public void run() {
+        fixtureBundle.getFixtures(nSim, nTeams);
+      }
+    });
+    measure("permute", "", 0, 0, nSim, new Runnable() {
+      public void run() {
+        fixtures.permute(random);
+      }
+    });
+    measure("generate", "", 0, 0, nSim, new Runnable() {
+      public void run() {
+        new FixtureGenerator(nTeams, nSim, 1).generate(fixtures.nRows);
+      }
+    });
+  }
+
+  void measureFrames(String renderer, int w, int h, int nSim, int nTeams) {
+    // Rebuilds interface at given size inside an offscreen buffer, starts a game and times frames
+    if (!renderer.equals(JAVA2D) && !g.isGL()) {
+      skip(renderer, w, h, nSim, "window isn't drawn with OpenGL, set renderer to P2D in prefs.csv");
+      return;
+    }
+    PGraphics canvas;
+    try {
+      canvas = createGraphics(w, h, renderer);
+    } catch (RuntimeException e) {
+      skip(renderer, w, h, nSim, "renderer not available: " + e.getMessage());
+      return;
+    } catch (LinkageError e) {
+      // OpenGL libraries are missing
+      skip(renderer, w, h, nSim, "renderer not available: " + e);
+      return;
+    }
+    SavedGlobals saved = new SavedGlobals();
+    g = canvas;
+    width = w;
+    height = h;
+    try {
+      canvas.beginDraw();
+      canvas.noStroke();
+      layout.update(w, h, nSim);
+      controlPanel = new ControlPanel("Benchmark", assets.getImage("images/logo.png"), 0, 0, nTeams, nSim, SIM_THRESHOLDS);
+      sessionBar = new SessionBar();
+      matchList = new MatchList(nSim);
+      matchList.isLogging = false;
+      controlPanel.deactivate();
+      long wallNow = clock.wallMillis();
+      engine.start(fixtureLoader.rebuild(nSim, nTeams, 1), nTeams, matchList.listLength, wallNow + 3*60*60*1000L, wallNow, clock.nanoTime());
+      sessionBar.activate();
+      matchList.activate(nSim);
+      engine.play(clock.nanoTime());
+
+      measure("frame", renderer, w, h, nSim, new Runnable() {
+        public void run() {
+          draw();
+        }
+      });
+      measure("matchList.display", renderer, w, h, nSim, new Runnable() {
+        public void run() {
+          matchList.display();
+        }
+      });
+      measure("sessionBar.display", renderer, w, h, nSim, new Runnable() {
+        public void run() {
+          sessionBar.display();
+        }
+      });
+      measure("populateCells", renderer, w, h, nSim, new Runnable() {
+        public void run() {
+          matchList.populateCells();
+        }
+      });
+      canvas.endDraw();
+    } catch (RuntimeException e) {
+      println("Could not draw " + renderer + " frames: " + e);
+    } finally {
+      deadlines.cancelSession();
+      engine.end();
+      saved.restore();
+    }
+  }
+
+  void runAll() {
+    measureFixtures();
+    for (String renderer : RENDERERS) {
+      for (int[] size : SIZES) {
+        for (int[] session : SESSIONS) {
+          measureFrames(renderer, size[0], size[1], session[0], session[1]);
+        }
+      }
+    }
+    saveStrings("benchmarks.csv", results);
+    println("Benchmark results saved to " + sketchPath("benchmarks.csv"));
+  }
+
+  void skip(String renderer, int w, int h, int nSim, String reason) {
+    String name = renderer.substring(renderer.lastIndexOf('.')+1);
+    println("Skipping " + name + " frames at " + w + "x" + h + ", " + reason);
+    results = append(results, String.format("skipped,%s,%d,%d,%d,0,,,", name, w, h, nSim));
+  }
+}
+
+class SavedGlobals {
+  // The sketch's graphics, size, clocks and interface, as they were when
+  // this was made. The benchmark, self test and simulation point these
+  // globals at their own while they run, and put them back with restore(),
+  // which also lays the screen out again as it was.
+
+  PGraphics screen;
+  int screenWidth, screenHeight, nSim;
+  Clock savedClock;
+  SessionEngine savedEngine;
+  DeadlineTimer savedDeadlines;
+  SessionJournal savedJournal;
+  ControlPanel savedPanel;
+  SessionBar savedBar;
+  MatchList savedList;
+
+  SavedGlobals() {
+    screen = g;
+    screenWidth = width;
+    screenHeight = height;
+    nSim = layout.nSim;
+    savedClock = clock;
+    savedEngine = engine;
+    savedDeadlines = deadlines;
+    savedJournal = journal;
+    savedPanel = controlPanel;
+    savedBar = sessionBar;
+    savedList = matchList;
+  }
+
+  void restore() {
+    g = screen;
+    width = screenWidth;
+    height = screenHeight;
+    clock = savedClock;
+    engine = savedEngine;
+    deadlines = savedDeadlines;
+    journal = savedJournal;
+    controlPanel = savedPanel;
+    sessionBar = savedBar;
+    matchList = savedList;
+    layout.update(width, height, nSim);
+  }
+}
@@ -0,0 +1,337 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class Broadcaster {
+  // Serves live game state to scoreboards and stream overlays as Server-Sent
+  // Events from http://<host>:<port>/events. A new subscriber is sent a
+  // 'state' event with every field, and after that only 'delta' events with
+  // the fields which have changed. Changes are gathered up and sent as one
+  // event per tick, encoded once and queued for every subscriber. Queues are
+  // written out by a small fixed pool of writers, so a viewer costs a queue
+  // and a socket rather than a thread. A viewer who stops reading holds up
+  // one writer at most, and is dropped (and their connection closed) once
+  // their queue is full or a write to them has been stuck for too long.
+  // Clock times are whole seconds, so a running game sends one small delta
+  // a second. State comes from the same snapshots as the public display.
+
+  final int TICK_MILLIS = 250;
+  final int KEEP_ALIVE_TICKS = 60;
+  final int WRITERS = 4;
+  final int REQUEST_TIMEOUT_MILLIS = 2000;
+  final long WRITE_TIMEOUT_NANOS = 2000000000L;
+  final String[] FIELDS = {
+    "game", "inSession", "inGame", "millisRemaining", "warnings", "sessionMillisRemaining", "fixtures"
+  };
+
+  int port, ticksSinceWrite;
+  String[] sentValues;
+  AtomicReference<DisplaySnapshot> latest;
+  ConcurrentLinkedQueue<Subscriber> joining;
+  ArrayList<Subscriber> subscribers;
+  ServerSocket server;
+  ExecutorService writers;
+  ScheduledExecutorService ticker;
+
+  Broadcaster(int port_) {
+    port = port_;
+    ticksSinceWrite = 0;
+    sentValues = new String[FIELDS.length];
+    latest = new AtomicReference<DisplaySnapshot>();
+    joining = new ConcurrentLinkedQueue<Subscriber>();
+    subscribers = new ArrayList<Subscriber>();
+    ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "Broadcaster");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    writers = Executors.newFixedThreadPool(WRITERS, new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "Broadcast writer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  void acceptAll() {
+    // Hands each new connection to a writer to answer, until the server is stopped
+    try {
+      while (true) {
+        final Socket socket = server.accept();
+        writers.execute(new Runnable() {
+          public void run() {
+            answer(socket);
+          }
+        });
+      }
+    } catch (IOException e) {
+      // Server has stopped
+    }
+  }
+
+  void answer(Socket socket) {
+    // Reads request (giving up on a client who is slow to send it), and subscribes them if they asked for events
+    try {
+      socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+      String request = reader.readLine();
+      for (String header = reader.readLine(); header != null && header.length() > 0; header = reader.readLine()) {
+        // Headers make no difference
+      }
+      OutputStream stream = socket.getOutputStream();
+      if (request == null || !request.matches("GET /events[ ?/].*")) {
+        stream.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes());
+        socket.close();
+        return;
+      }
+      stream.write("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\nAccess-Control-Allow-Origin: *\r\nConnection: close\r\n\r\n".getBytes());
+      stream.flush();
+      joining.add(new Subscriber(socket, writers));
+    } catch (IOException e) {
+      try {
+        socket.close();
+      } catch (IOException closing) {
+        // Already closed
+      }
+    }
+  }
+
+  String encode(String eventName, String[] values, boolean isFull) {
+    // Builds an event holding all fields, or only those which differ from what was last sent
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < FIELDS.length; i++) {
+      if (isFull || !values[i].equals(sentValues[i])) {
+        if (json.length() > 1) {
+          json.append(',');
+        }
+        json.append('"').append(FIELDS[i]).append("\":").append(values[i]);
+      }
+    }
+    if (json.length() == 1) {
+      return null;
+    }
+    return "event: " + eventName + "\ndata: " + json.append('}') + "\n\n";
+  }
+
+  void publish(DisplaySnapshot snapshot) {
+    // Called from the operator's animation thread
+    latest.set(snapshot);
+  }
+
+  boolean start() {
+    // Returns false if the port can't be opened
+    try {
+      server = new ServerSocket(port);
+    } catch (IOException e) {
+      println("Could not start broadcast server on port " + port + ": " + e.getMessage());
+      return false;
+    }
+    Thread acceptor = new Thread(new Runnable() {
+      public void run() {
+        acceptAll();
+      }
+    }, "Broadcast server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    ticker.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        tick();
+      }
+    }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    println("Broadcasting game state on port " + port);
+    return true;
+  }
+
+  void stop() {
+    // Closes every connection once the ticker has finished with them
+    try {
+      server.close();
+    } catch (IOException e) {
+      // Already closed
+    }
+    ticker.shutdownNow();
+    try {
+      ticker.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      // Close connections anyway
+    }
+    for (Subscriber subscriber : subscribers) {
+      subscriber.close();
+    }
+    for (Subscriber subscriber : joining) {
+      subscriber.close();
+    }
+    writers.shutdownNow();
+  }
+
+  void tick() {
+    // Anything thrown here would cancel every later tick, so report it and carry on
+    try {
+      sendChanges();
+    } catch (RuntimeException e) {
+      println("Could not broadcast game state: " + e);
+    }
+  }
+
+  void sendChanges() {
+    DisplaySnapshot snapshot = latest.get();
+    if (snapshot == null) {
+      return;
+    }
+    String[] values = valuesOf(snapshot, clock.nanoTime());
+
+    // Give up on anyone whose connection has stopped taking data, which also frees the writer stuck on them
+    long now = System.nanoTime();
+    for (int i = subscribers.size()-1; i >= 0; i--) {
+      if (subscribers.get(i).isStalledAt(now, WRITE_TIMEOUT_NANOS)) {
+        subscribers.remove(i).close();
+      }
+    }
+
+    // Bring new subscribers up to date
+    String state = encode("state", values, true);
+    for (Subscriber subscriber = joining.poll(); subscriber != null; subscriber = joining.poll()) {
+      if (subscriber.send(state.getBytes())) {
+        subscribers.add(subscriber);
+      }
+    }
+
+    // Send changes to everyone else, or a comment now and then so that closed connections are found
+    String delta = encode("delta", values, false);
+    sentValues = values;
+    ticksSinceWrite++;
+    if (delta == null && ticksSinceWrite < KEEP_ALIVE_TICKS) {
+      return;
+    }
+    byte[] message = (delta != null ? delta : ":\n\n").getBytes();
+    for (int i = subscribers.size()-1; i >= 0; i--) {
+      if (!subscribers.get(i).send(message)) {
+        subscribers.remove(i);
+      }
+    }
+    ticksSinceWrite = 0;
+  }
+
+  String[] valuesOf(DisplaySnapshot snapshot, long now) {
+    // JSON for each field, in the same order as FIELDS
+    StringBuilder fixtures = new StringBuilder("[");
+    for (int i = 0; i < snapshot.games.length; i++) {
+      fixtures.append(i > 0 ? ",[" : "[");
+      for (int j = 0; j < snapshot.games[i].length; j++) {
+        fixtures.append(j > 0 ? "," : "").append(snapshot.games[i][j]);
+      }
+      fixtures.append(']');
+    }
+    fixtures.append(']');
+    String[] values = {
+      str(snapshot.currentGame), str(snapshot.isActive), str(snapshot.inGame), str(1000 * (int) (snapshot.gameRemainingAt(now) / 1000000000L)), str(snapshot.warningsPassed), str(1000 * (int) (snapshot.sessionRemainingAt(now) / 1000000000L)), fixtures.toString()
+    };
+    return values;
+  }
+}
+
+class Subscriber {
+  // One network viewer, with a short queue of events waiting to be written
+  // to them. Events are queued by the ticker without blocking, and written
+  // by whichever of the broadcaster's writers is free, one writer at a time.
+  // Closing a subscriber closes their connection, which also ends a write to
+  // them which is stuck.
+
+  final int QUEUE_LENGTH = 16;
+
+  Socket socket;
+  OutputStream stream;
+  ArrayBlockingQueue<byte[]> queue;
+  AtomicBoolean isFlushing;
+  ExecutorService writers;
+  volatile long writeStartNanos;
+  volatile boolean isWriting, isClosed;
+
+  Subscriber(Socket socket_, ExecutorService writers_) throws IOException {
+    socket = socket_;
+    writers = writers_;
+    stream = socket.getOutputStream();
+    queue = new ArrayBlockingQueue<byte[]>(QUEUE_LENGTH);
+    isFlushing = new AtomicBoolean(false);
+    isWriting = false;
+    isClosed = false;
+  }
+
+  void close() {
+    isClosed = true;
+    queue.clear();
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Already closed
+    }
+  }
+
+  void flush() {
+    // Writes queued events until there are none left, then lets another writer take over when more arrive
+    try {
+      for (byte[] message = queue.poll(); message != null && !isClosed; message = queue.poll()) {
+        writeStartNanos = System.nanoTime();
+        isWriting = true;
+        stream.write(message);
+        stream.flush();
+        isWriting = false;
+      }
+    } catch (IOException e) {
+      // Subscriber has gone away, or was given up on while being written to
+      close();
+    }
+    isFlushing.set(false);
+    if (!queue.isEmpty() && !isClosed) {
+      schedule();
+    }
+  }
+
+  boolean isStalledAt(long now, long timeoutNanos) {
+    return isWriting && now-writeStartNanos > timeoutNanos;
+  }
+
+  void schedule() {
+    // Asks a writer to flush queue, unless one is already doing so
+    if (isFlushing.compareAndSet(false, true)) {
+      writers.execute(new Runnable() {
+        public void run() {
+          flush();
+        }
+      });
+    }
+  }
+
+  boolean send(byte[] message) {
+    // Returns false (and gives up on subscriber) if they have gone away or fallen too far behind
+    if (isClosed || !queue.offer(message)) {
+      close();
+      return false;
+    }
+    schedule();
+    return true;
+  }
+}
@@ -37,7 +37,14 @@ class Button {
 
     isActive = true;
     wasPressed = false;
-    buttonFont = loadFont("fonts/SquarishSansCTRegular-24.vlw");
+    buttonFont = assets.getFont("fonts/SquarishSansCTRegular-24.vlw");
+  }
+
+  void addHoverAreas(HoverAreas areas) {
+    // Same box as isHovered()
+    if (isActive) {
+      areas.add(xCentre-60, yCentre-20, xCentre+60, yCentre+12);
+    }
   }
 
   void display() {
@@ -54,7 +61,7 @@ class Button {
     // Draw border
     noFill();
     strokeWeight(2);
-    if (isActive && mouseX >= xCentre-60 && mouseX <= xCentre+60 && mouseY >= yCentre-20 && mouseY <= yCentre+12) {
+    if (isHovered(mouseX, mouseY)) {
       stroke(activeColour);
     } else {
       stroke(inactiveColour);
@@ -63,8 +70,12 @@ class Button {
     noStroke();
   }
 
+  boolean isHovered(int pointerX, int pointerY) {
+    return isActive && pointerX >= xCentre-60 && pointerX <= xCentre+60 && pointerY >= yCentre-20 && pointerY <= yCentre+12;
+  }
+
   void respond(int clickX, int clickY) {
-    if (isActive && clickX >= xCentre-60 && clickX <= xCentre+60 && clickY >= yCentre-20 && clickY <= yCentre+12) {
+    if (isHovered(clickX, clickY)) {
       wasPressed = true;
     }
   }
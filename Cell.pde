@@ -22,14 +22,16 @@
 //
 
 class Cell {
-  int gameNo, nMatches, xPos, yPos, xSize, ySize, minLeft, secLeft;
+  int gameNo, nMatches, xPos, yPos, xSize, ySize, minLeft, secLeft, warningsPassed, nWarnings;
   boolean isActive, isTicking, miniButtons, playPressed, skipPressed;
-  TableRow fixture;
-  PFont cellTeamFont, cellInfoFontSmall, cellInfoFontLarge;
+  FixtureRow fixture;
   PImage playIcon, pauseIcon, skipIcon, stopIcon;
+  PImage activeSprite, inactiveSprite;
+  PShape frameShape;
+  int frameMatches;
   IconButton playButton, skipButton;
 
-  Cell(int gameNo_, TableRow fixture_, int xPos_, int yPos_, int xSize_, int ySize_) {
+  Cell(int gameNo_, FixtureRow fixture_, int xPos_, int yPos_, int xSize_, int ySize_) {
     gameNo = gameNo_;
     xPos = xPos_;
     yPos = yPos_;
@@ -43,116 +45,107 @@ class Cell {
     playPressed = false;
 
     fixture = fixture_;
-    nMatches = fixture.getColumnCount()/2;
-
-    // Load assets
-    cellTeamFont = loadFont("fonts/SquarishSansCTRegular-66.vlw");
-    cellInfoFontSmall = loadFont("fonts/SquarishSansCTRegular-24.vlw");
-    cellInfoFontLarge = loadFont("fonts/SquarishSansCTRegular-48.vlw");
-    playIcon = loadImage("images/play.png");
-    pauseIcon = loadImage("images/pause.png");
-    skipIcon = loadImage("images/skip.png");
-    stopIcon = loadImage("images/stop.png");
-
-    // Create buttons
-    if (miniButtons) {
-      playButton = new IconButton(xPos+xSize-266, yPos+ySize-63, 48, 48, playIcon, TIMER_GREEN, TIMER_GREY);
-      skipButton = new IconButton(xPos+xSize-204, yPos+ySize-63, 48, 48, skipIcon, TIMER_RED, TIMER_GREY);
-    } else {
-      playButton = new IconButton(xPos+98, yPos+ySize-63, xSize/2-134, 48, playIcon, TIMER_GREEN, TIMER_GREY);
-      skipButton = new IconButton(xPos+xSize/2-22, yPos+ySize-63, xSize/2-134, 48, skipIcon, TIMER_RED, TIMER_GREY);
-    }
+    nMatches = fixture.getMatchCount();
+
+    // Get shared assets
+    playIcon = assets.getImage("images/play.png");
+    pauseIcon = assets.getImage("images/pause.png");
+    skipIcon = assets.getImage("images/skip.png");
+    stopIcon = assets.getImage("images/stop.png");
+
+    // Create buttons, then put them in place
+    playButton = new IconButton(0, 0, 0, 0, playIcon, TIMER_GREEN, TIMER_GREY);
+    skipButton = new IconButton(0, 0, 0, 0, skipIcon, TIMER_RED, TIMER_GREY);
+    updateButtons();
   }  
 
-  void display() {
-    // Fill cell
-    for (int i = 0; i < ySize; i++) {
-      float fillColour = map(i, 0, ySize, (isActive ? 200 : 60), (isActive ? 180 : 50));
-      fill(fillColour);
-      rect(xPos, yPos+i, xSize, 1);
+  void addHoverAreas(HoverAreas areas, int yOffset) {
+    // Only the active cell shows its buttons
+    if (isActive) {
+      playButton.addHoverAreas(areas, yOffset);
+      skipButton.addHoverAreas(areas, yOffset);
     }
+  }
 
-    // Draw outline and dividing lines
-    noFill();
-    stroke(0);
-    strokeWeight(1.5);
-    rect(xPos, yPos, xSize, ySize);
-    for (int i = 1; i < nMatches; i++) {
-      line(xPos+i*xSize/nMatches, yPos+35, xPos+i*xSize/nMatches, yPos+ySize/2-18);
-    } 
-    noStroke();
+  void display(int pointerX, int pointerY) {
+    // Fill cell with pre-rendered gradient (fetched again after resizing)
+    if (activeSprite == null || inactiveSprite == null) {
+      activeSprite = layerCache.getCellSprite(xSize, ySize, true);
+      inactiveSprite = layerCache.getCellSprite(xSize, ySize, false);
+    }
+    noTint();
+    image(isActive ? activeSprite : inactiveSprite, xPos, yPos);
+
+    // Draw outline and dividing lines (retained shape with OpenGL, rebuilt after resizing)
+    if (g.isGL()) {
+      if (frameShape == null || frameMatches != nMatches) {
+        frameShape = layerCache.renderCellFrame(xSize, ySize, nMatches);
+        frameMatches = nMatches;
+      }
+      shape(frameShape, xPos, yPos);
+    } else {
+      noFill();
+      stroke(0);
+      strokeWeight(1.5);
+      rect(xPos, yPos, xSize, ySize);
+      for (int i = 1; i < nMatches; i++) {
+        line(xPos+i*xSize/nMatches, yPos+layout.dividerTop, xPos+i*xSize/nMatches, yPos+ySize/2-layout.dividerGap);
+      } 
+      noStroke();
+    }
 
     // Display playing teams
     for (int i = 0; i < nMatches; i++) {
+      // Team strings and their kerning come from shared cache
       int xCentre = xPos+(2*i+1)*xSize/(2*nMatches);
-      int leftTeam = fixture.getInt(2*i);
-      int rightTeam = fixture.getInt(2*i+1);
-
-      // Optimise text centering
-      if (leftTeam%10 == 1) { 
-        xCentre -= 7;
+      TeamLabel label = labels.teams(fixture.getTeam(2*i), fixture.getTeam(2*i+1));
+
+      // Draw highlight box (inactive cells have none, so skip drawing it)
+      if (isActive) {
+        fill(TIMER_GREY, 40);
+        if (warningsPassed > 0 && warningsPassed < nWarnings && secLeft%2 == 1) {
+          // Flash amber after first warnings
+          fill(TIMER_AMBER, 200);
+        } else if (warningsPassed > 0 && warningsPassed == nWarnings && secLeft%2 == 1) {
+          // Flash red after final warning
+          fill(TIMER_RED, 180);
+        }
+        rect(xPos+layout.cellInset+i*xSize/nMatches, yPos+layout.cellInset, xSize/nMatches-2*layout.cellInset, ySize/2-layout.boxGap, layout.boxRadius);
       }
-      if (floor(leftTeam/10.0) == 1) {
-        xCentre -= 8;
-      }
-      if (rightTeam%10 == 1) {
-        xCentre += 8;
-      }
-      if (leftTeam < 10 && floor(rightTeam/10.0) == 1) { 
-        xCentre -= 20;
-      } else if (leftTeam < 10 && floor(rightTeam/10.0) > 1) { 
-        xCentre -= 25;
-      } 
-      if (floor(leftTeam/10.0) == 1 && floor(rightTeam/10.0) == 1) {
-        xCentre += 8;
-      }
-
-      // Draw highlight box
-      fill(TIMER_GREY, isActive ? 40 : 0);
-      if (isActive && minLeft == 0 && secLeft > 10 && secLeft <= 30 && secLeft%2 == 1) {
-        // Flash amber if 10 to 30 seconds remaining
-        fill(TIMER_AMBER, 200);
-      } else if (isActive && minLeft == 0 && secLeft <= 10 && secLeft%2 == 1) {
-        // Flash red if less than 10 seconds remaining
-        fill(TIMER_RED, 180);
-      }
-      rect(xPos+14+i*xSize/nMatches, yPos+14, xSize/nMatches-28, ySize/2-10, 10);
 
-      // Print centered playing teams (ternary operators kern '1v' and 'v1')
+      // Print centered playing teams, at the size chosen by the layout with kerning scaled to match
       fill(isActive ? TIMER_GREY : 30);
-      textFont(cellTeamFont);
+      textFont(layout.teamFont, layout.teamSize);
       textAlign(CENTER);
-      text("v", xCentre+1, yPos+70);
+      text("v", xCentre+label.vX*layout.teamScale, yPos+layout.teamBaseline);
       textAlign(RIGHT);
-      text(leftTeam, xCentre-(leftTeam%10 == 1 ? 20 : 25), yPos+70);
+      text(label.left, xCentre+label.leftX*layout.teamScale, yPos+layout.teamBaseline);
       textAlign(LEFT);
-      text(rightTeam, xCentre+(floor(rightTeam/10.0) == 1 ? 14 : 25), yPos+70);
+      text(label.right, xCentre+label.rightX*layout.teamScale, yPos+layout.teamBaseline);
     }
 
     // Display game and time information
     if (isActive) {
       fill(TIMER_GREY);
       textAlign(LEFT);
-      textFont(cellInfoFontSmall);
-      text("Game", xPos+15, yPos+ySize-50);
-      textFont(cellInfoFontLarge);
-      String gameString = String.format("%02d", gameNo%100);
-      text(gameString, xPos+14, yPos+ySize-14);
+      textFont(layout.smallFont, layout.smallSize);
+      text("Game", xPos+layout.gameLabelX, yPos+ySize-layout.labelBaseline);
+      textFont(layout.largeFont, layout.largeSize);
+      text(labels.twoDigits(gameNo%100), xPos+layout.cellInset, yPos+ySize-layout.cellInset);
       textAlign(RIGHT);
-      textFont(cellInfoFontSmall);
-      text("Remaining", xPos+xSize-17, yPos+ySize-50);
-      textFont(cellInfoFontLarge);
-      String secString = String.format("%02d", secLeft);
-      text(secString, xPos+xSize-14, yPos+ySize-14);
+      textFont(layout.smallFont, layout.smallSize);
+      text("Remaining", xPos+xSize-layout.remainingLabelX, yPos+ySize-layout.labelBaseline);
+      textFont(layout.largeFont, layout.largeSize);
+      text(labels.twoDigits(secLeft), xPos+xSize-layout.cellInset, yPos+ySize-layout.cellInset);
       textAlign(LEFT);
-      text(minLeft, xPos+xSize-145, yPos+ySize-14);
-      text(":", xPos+xSize-106, yPos+ySize-14);
+      text(labels.number(minLeft), xPos+xSize-layout.minutesX, yPos+ySize-layout.cellInset);
+      text(":", xPos+xSize-layout.colonX, yPos+ySize-layout.cellInset);
     }
 
     // Display game controls
     if (isActive) {
-      playButton.display();
-      skipButton.display();
+      playButton.display(pointerX, pointerY);
+      skipButton.display(pointerX, pointerY);
     }
   }  
 
@@ -181,9 +174,10 @@ class Cell {
     updateButtons();
   }
 
-  void setFixture(TableRow newFixture) {
-    fixture = newFixture;
-    nMatches = fixture.getColumnCount()/2;
+  void setFixture(Fixtures newFixtures, int row) {
+    // Point existing row view at new data
+    fixture.setRow(newFixtures, row);
+    nMatches = fixture.getMatchCount();
   }
 
   void setGameNo(int newNo) {
@@ -192,6 +186,9 @@ class Cell {
 
   void setHeight(int newSize) {
     ySize = newSize;
+    activeSprite = null;
+    inactiveSprite = null;
+    frameShape = null;
     updateButtons();
   }
 
@@ -203,19 +200,29 @@ class Cell {
     secLeft = newSec;
   }
 
+  void setWarnings(int passed, int total) {
+    warningsPassed = passed;
+    nWarnings = total;
+  }
+
   void setWidth(int newSize) {
     xSize = newSize;
+    activeSprite = null;
+    inactiveSprite = null;
+    frameShape = null;
     updateButtons();
   }
 
   void updateButtons() {
-    // Resize and reposition
+    // Resize and reposition, scaled with the cell
+    int buttonY = yPos+ySize-layout.scaled(63);
+    int buttonSize = layout.scaled(48);
     if (miniButtons) {
-      playButton.resizeTo(xPos+xSize-266, yPos+ySize-63, 48, 48);
-      skipButton.resizeTo(xPos+xSize-204, yPos+ySize-63, 48, 48);
+      playButton.resizeTo(xPos+xSize-layout.scaled(266), buttonY, buttonSize, buttonSize);
+      skipButton.resizeTo(xPos+xSize-layout.scaled(204), buttonY, buttonSize, buttonSize);
     } else {
-      playButton.resizeTo(xPos+98, yPos+ySize-63, xSize/2-134, 48);
-      skipButton.resizeTo(xPos+xSize/2-22, yPos+ySize-63, xSize/2-134, 48);
+      playButton.resizeTo(xPos+layout.scaled(98), buttonY, xSize/2-layout.scaled(134), buttonSize);
+      skipButton.resizeTo(xPos+xSize/2-layout.scaled(22), buttonY, xSize/2-layout.scaled(134), buttonSize);
     }
 
     // Set icon and highlight colour
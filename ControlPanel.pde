@@ -22,47 +22,47 @@
 //
 
 class ControlPanel {
-  final int FULL_ICE = 0;
-  final int HALF_ICE = 1;
-  final int THIRD_ICE = 2;
+  final int MAX_TEAMS = 99;
+  final int BUTTON_GAP = 10;
+  final String[] ICE_FRACTIONS = {
+    "Full", "Half", "Third", "Quarter", "Fifth", "Sixth", "Seventh", "Eighth"
+  };
 
-  int halfIceThresh, thirdIceThresh;
+  int[] simThresholds;
   boolean isActive;
   String title;
   color highlightColour;
-  PImage logo;
+  PImage logo, shadow;
   PFont panelFont;
 
   Spinner hourSpinner, minSpinner, teamSpinner;
   Radio simRadio;
   Button startButton, endButton;
 
-  ControlPanel(String title_, PImage logo_, int endHour_, int endMin_, int nTeams_, int nSim_, int halfIceThresh_, int thirdIceThresh_) {
+  ControlPanel(String title_, PImage logo_, int endHour_, int endMin_, int nTeams_, int nSim_, int[] simThresholds_) {
     title = title_;   
     logo = logo_;
 
     isActive = true;
     highlightColour = TIMER_GREEN;
-    panelFont = loadFont("fonts/SquarishSansCTRegular-24.vlw");
+    panelFont = assets.getFont("fonts/SquarishSansCTRegular-24.vlw");
 
     // Store the values of non-editable properties
-    // These can be set in prefs.csv
-    halfIceThresh = halfIceThresh_;
-    thirdIceThresh = thirdIceThresh_;
-
-    String[] labels = {
-      "Full ice", "Half ice", "Third ice"
-    };
+    // These can be set in prefs.csv, with one option for each threshold after full ice
+    simThresholds = simThresholds_;
+    String[] labels = new String[simThresholds.length+1];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = i < ICE_FRACTIONS.length ? ICE_FRACTIONS[i] + " ice" : (i+1) + " games";
+    }
 
-    // Create widgets
-    // Padding offset is used to cope with different screen sizes
-    int xOffset = max(0, width/2-571);
-    hourSpinner = new Spinner(486+xOffset, 82, endHour_, 0, 23, 1, highlightColour, TIMER_GREY);
-    minSpinner = new Spinner(556+xOffset, 82, endMin_, 0, 55, 5, highlightColour, TIMER_GREY);
-    teamSpinner = new Spinner(486+xOffset, 110, nTeams_, 3, 30, 1, highlightColour, TIMER_GREY);
-    simRadio = new Radio(657+xOffset, 53, labels, nSim_-1, highlightColour, TIMER_GREY);
-    startButton = new Button(width-1000 >= 40 ? width-116 : width-106, 62, "START", highlightColour, TIMER_GREY);
-    endButton = new Button(width-1000 >= 40 ? width-116 : width-106, 104, "END", highlightColour, TIMER_GREY);
+    // Create widgets, then move them into place for the current layout
+    hourSpinner = new Spinner(0, 82, endHour_, 0, 23, 1, highlightColour, TIMER_GREY);
+    minSpinner = new Spinner(0, 82, endMin_, 0, 55, 5, highlightColour, TIMER_GREY);
+    teamSpinner = new Spinner(0, 110, nTeams_, 3, MAX_TEAMS, 1, highlightColour, TIMER_GREY);
+    simRadio = new Radio(0, 53, labels, nSim_-1, highlightColour, TIMER_GREY);
+    startButton = new Button(0, 62, "START", highlightColour, TIMER_GREY);
+    endButton = new Button(0, 104, "END", highlightColour, TIMER_GREY);
+    applyLayout();
 
     // Disable 'END' button
     endButton.isActive = false;
@@ -83,32 +83,47 @@ class ControlPanel {
     isActive = true;
   }
 
+  void addHoverAreas(HoverAreas areas) {
+    // Panel only changes by itself when the pointer moves over a widget
+    hourSpinner.addHoverAreas(areas);
+    minSpinner.addHoverAreas(areas);
+    teamSpinner.addHoverAreas(areas);
+    simRadio.addHoverAreas(areas);
+    startButton.addHoverAreas(areas);
+    endButton.addHoverAreas(areas);
+  }
+
+  void applyLayout() {
+    // Padding offset is used to cope with different screen sizes
+    int xOffset = layout.panelOffset;
+    hourSpinner.xPos = 486+xOffset;
+    minSpinner.xPos = 556+xOffset;
+    teamSpinner.xPos = 486+xOffset;
+    simRadio.xPos = 657+xOffset;
+    startButton.xCentre = layout.panelButtonX;
+    endButton.xCentre = layout.panelButtonX;
+
+    // Ice options must stay clear of the buttons, so take more rows if there isn't room for another column
+    simRadio.fitWidth(layout.panelButtonX-60 - BUTTON_GAP - (simRadio.xPos-12));
+    shadow = null;
+  }
+
   void adjustSimRadio() {
     // Makes sure that only allowed options are selectable
 
     // Get current values
-    int currentIce = simRadio.getSelectedIndex();
     int newNTeams = teamSpinner.getValue();
 
-    // Set default option
+    // Set default option, which simFor() keeps within what is allowed below
     simRadio.enableAll();
-    if (newNTeams < halfIceThresh) {
-      simRadio.setSelected(FULL_ICE);
-    } else if (newNTeams >= halfIceThresh && newNTeams < thirdIceThresh) {
-      simRadio.setSelected(HALF_ICE);
-    } else {
-      simRadio.setSelected(THIRD_ICE);
-    }
-
-    // Disable options with unavailable fixtures
-    if (newNTeams > 12) {
-      simRadio.disableOption(FULL_ICE);
-    }
-    if (newNTeams < 5 || newNTeams > 17) {
-      simRadio.disableOption(HALF_ICE);
-    }
-    if (newNTeams < 8) {
-      simRadio.disableOption(THIRD_ICE);
+    simRadio.setSelected(simFor(newNTeams, simThresholds)-1);
+
+    // Disable options with too few teams to give everyone a rest (5 for half ice, 8 for third, and so on)
+    // Fixtures are generated for any larger number of teams
+    for (int nSim = 2; nSim <= simThresholds.length+1; nSim++) {
+      if (nSim > maxSimFor(newNTeams)) {
+        simRadio.disableOption(nSim-1);
+      }
     }
   }
 
@@ -127,15 +142,26 @@ class ControlPanel {
     isActive = false;
   }
 
+  void showSession(int endHour, int endMin, int nTeams, int nSim) {
+    // Sets widgets to match a session which is already running, e.g. one resumed after a restart
+    hourSpinner.setValue(endHour);
+    minSpinner.setValue(endMin);
+    teamSpinner.setValue(nTeams);
+    adjustSimRadio();
+    simRadio.setSelected(min(nSim, simThresholds.length+1)-1);
+    simRadio.changeMade = false;
+    deactivate();
+  }
+
   void display() {
-    // Introduce variable padding to cope with different screen sizes
-    int xOffset = max(0, width/2-571);
+    int xOffset = layout.panelOffset;
 
-    // Draw shadow
-    for (int i = 0; i < 15; i++) {
-      fill(0, 0, 0, 90-6*i);
-      rect(0, 150+i, width, 1);
+    // Draw shadow (rendered once per layout)
+    if (shadow == null) {
+      shadow = layerCache.renderShadow(width, 15, 90, 6, DOWN);
     }
+    noTint();
+    image(shadow, 0, 150);
 
     // Draw panel
     fill(0);
@@ -197,9 +223,15 @@ class ControlPanel {
     endButton.respond(clickX, clickY);
 
     // Adjust ice options given number of teams
+    boolean needsFixtures = false;
     if (teamSpinner.changeMade) {
       adjustSimRadio();
       teamSpinner.changeMade = false;
+      needsFixtures = true;
+    }
+    if (simRadio.changeMade) {
+      simRadio.changeMade = false;
+      needsFixtures = true;
     }
 
     // Pass on start or end of session
@@ -209,6 +241,12 @@ class ControlPanel {
     } else if (endButton.wasPressed) {
       endButton.wasPressed = false;
       activate();
+      needsFixtures = true;
+    }
+
+    // Start loading fixtures for the next session in background
+    if (needsFixtures) {
+      fixtureLoader.prepare(getNSim(), getNTeams());
     }
   }
 
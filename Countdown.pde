@@ -0,0 +1,87 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class Countdown {
+  // Counts down a fixed length of time using monotonic timestamps (from
+  // System.nanoTime() or a virtual clock), which never jump when the wall
+  // clock is changed. Time left is worked out from the timestamp passed in
+  // rather than accumulated frame by frame, so it comes out the same however
+  // often (or late) it is checked.
+
+  long lengthNanos, bankedNanos, startNanos;
+  boolean isRunning;
+
+  Countdown(long lengthNanos_) {
+    lengthNanos = lengthNanos_;
+    reset();
+  }
+
+  long elapsedAt(long now) {
+    long elapsed = bankedNanos + (isRunning ? now-startNanos : 0);
+    return Math.min(elapsed, lengthNanos);
+  }
+
+  boolean isOverAt(long now) {
+    return elapsedAt(now) >= lengthNanos;
+  }
+
+  void pause(long now) {
+    // Keep time played so far
+    if (isRunning) {
+      bankedNanos += now-startNanos;
+      isRunning = false;
+    }
+  }
+
+  float progressAt(long now) {
+    // Fraction of length which has elapsed, from 0 to 1
+    if (lengthNanos <= 0) {
+      return 1.0;
+    }
+    return (float) ((double) elapsedAt(now) / lengthNanos);
+  }
+
+  long remainingAt(long now) {
+    return lengthNanos - elapsedAt(now);
+  }
+
+  void reset() {
+    bankedNanos = 0;
+    isRunning = false;
+  }
+
+  void setElapsed(long elapsedNanos) {
+    // Winds a stopped countdown on, e.g. to carry on a game from before a restart
+    if (!isRunning) {
+      bankedNanos = Math.min(elapsedNanos, lengthNanos);
+    }
+  }
+
+  void start(long now) {
+    // Starts from beginning, or resumes if paused
+    if (!isRunning) {
+      startNanos = now;
+      isRunning = true;
+    }
+  }
+}
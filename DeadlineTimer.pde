@@ -0,0 +1,206 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class TimerEvent {
+  // A deadline which has passed, stamped with when it was due and when it
+  // actually fired (both monotonic), plus the wall clock time
+
+  final int kind, level, generation, run;
+  final long dueNanos, firedNanos, wallMillis;
+
+  TimerEvent(int kind_, int level_, int generation_, int run_, long dueNanos_) {
+    kind = kind_;
+    level = level_;
+    generation = generation_;
+    run = run_;
+    dueNanos = dueNanos_;
+    firedNanos = clock.nanoTime();
+    wallMillis = clock.wallMillis();
+  }
+
+  String describe() {
+    switch (kind) {
+    case GAME_WARNING:
+      return "Game warning " + level;
+    case GAME_END:
+      return "Game end";
+    case SESSION_WARNING:
+      return "Session warning " + level;
+    default:
+      return "Session end";
+    }
+  }
+}
+
+class DeadlineTimer {
+  // Owns the deadlines for the current game and session on its own thread, so
+  // that warnings and game ends happen on time however slowly frames are being
+  // drawn. Sound cues are played as soon as a deadline fires. Events are
+  // queued for the animation thread to act on at the start of the next
+  // frame, which is requested as soon as an event fires.
+  // Cancelling a game or session makes any of its events which are still
+  // queued stale, and these are dropped. Pausing a game keeps them. A
+  // deadline which fires just as its game is cancelled or paused (too late
+  // for its task to be cancelled) is dropped before its cue is played.
+  // Subclasses can run deadlines on some other clock by overriding
+  // scheduleTask().
+
+  long[] gameWarnings, sessionWarnings;
+  volatile int gameGeneration, sessionGeneration, gameRun;
+  boolean isLogging;
+  ArrayList<Future<?>> gameTasks, sessionTasks;
+  ConcurrentLinkedQueue<TimerEvent> events;
+  ScheduledExecutorService timer;
+  AudioCues cues;
+
+  DeadlineTimer(int[] gameWarningSecs, int[] sessionWarningMins, AudioCues cues_) {
+    cues = cues_;
+
+    // Warnings are given as time before the deadline, and are kept longest first
+    gameWarnings = toNanos(gameWarningSecs, 1000000000L);
+    sessionWarnings = toNanos(sessionWarningMins, 60*1000000000L);
+    gameGeneration = 0;
+    sessionGeneration = 0;
+    gameRun = 0;
+    isLogging = true;
+    gameTasks = new ArrayList<Future<?>>();
+    sessionTasks = new ArrayList<Future<?>>();
+    events = new ConcurrentLinkedQueue<TimerEvent>();
+    timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "Deadline timer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  void cancel(ArrayList<Future<?>> tasks) {
+    for (Future<?> task : tasks) {
+      task.cancel(false);
+    }
+    tasks.clear();
+  }
+
+  void cancelGame() {
+    cancel(gameTasks);
+    gameGeneration++;
+  }
+
+  void pauseGame() {
+    cancel(gameTasks);
+    gameRun++;
+  }
+
+  void cancelSession() {
+    cancel(sessionTasks);
+    sessionGeneration++;
+  }
+
+  boolean isCurrent(int kind, int generation, int run) {
+    // Whether a deadline still belongs to the current session, or to the current game since it was last started
+    if (kind == GAME_WARNING || kind == GAME_END) {
+      return generation == gameGeneration && run == gameRun;
+    }
+    return generation == sessionGeneration;
+  }
+
+  TimerEvent poll() {
+    // Returns next event still relevant to the current game or session, or null if none
+    // Only to be called from the animation thread
+    TimerEvent event = events.poll();
+    while (event != null) {
+      if (isCurrent(event.kind, event.generation, event.run)) {
+        if (isLogging) {
+          println(String.format("%tT.%<tL  %s (%.1f ms late)", event.wallMillis, event.describe(), (event.firedNanos-event.dueNanos)/1.0e6));
+        }
+        return event;
+      }
+      event = events.poll();
+    }
+    return null;
+  }
+
+  void post(final int kind, final int level, final int generation, final int run, final long dueNanos, ArrayList<Future<?>> tasks) {
+    // Sounds cue and queues event at deadline, then asks for a frame to handle it
+    // Checked first, so that a game or session which has just been cancelled or paused stays quiet
+    Runnable task = new Runnable() {
+      public void run() {
+        if (!isCurrent(kind, generation, run)) {
+          return;
+        }
+        cues.play(kind, level);
+        events.add(new TimerEvent(kind, level, generation, run, dueNanos));
+        redraw();
+      }
+    };
+    tasks.add(scheduleTask(task, dueNanos));
+  }
+
+  int schedule(Countdown clock, long now, long[] warnings, int warningKind, int endKind, int generation, int run, ArrayList<Future<?>> tasks) {
+    // Schedules warnings which are still to come and the end, returning the number of warnings already passed
+    long remaining = clock.remainingAt(now);
+    int passed = warningsPassed(warnings, remaining);
+    for (int i = passed; i < warnings.length; i++) {
+      post(warningKind, i+1, generation, run, now+remaining-warnings[i], tasks);
+    }
+    post(endKind, 0, generation, run, now+remaining, tasks);
+    return passed;
+  }
+
+  Future<?> scheduleTask(Runnable task, long dueNanos) {
+    // Runs task on the timer thread once clock reaches dueNanos
+    return timer.schedule(task, dueNanos-clock.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
+  int scheduleGame(Countdown clock, long now) {
+    // Replaces deadlines for a game which is starting or resuming
+    cancel(gameTasks);
+    gameRun++;
+    return schedule(clock, now, gameWarnings, GAME_WARNING, GAME_END, gameGeneration, gameRun, gameTasks);
+  }
+
+  int scheduleSession(Countdown clock, long now) {
+    // Replaces deadlines for a session which is starting
+    cancelSession();
+    return schedule(clock, now, sessionWarnings, SESSION_WARNING, SESSION_END, sessionGeneration, 0, sessionTasks);
+  }
+
+  int warningsPassed(long[] warnings, long remaining) {
+    // Warnings are longest first, so those already passed come first
+    int passed = 0;
+    while (passed < warnings.length && warnings[passed] >= remaining) {
+      passed++;
+    }
+    return passed;
+  }
+
+  long[] toNanos(int[] times, long unitNanos) {
+    int[] sorted = reverse(sort(times));
+    long[] nanos = new long[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      nanos[i] = sorted[i] * unitNanos;
+    }
+    return nanos;
+  }
+}
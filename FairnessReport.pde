@@ -0,0 +1,76 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class FairnessReport {
+  // Counts how often each team plays in each part of the rink over a fixture
+  // list, to check that rotating the rows shares the positions out evenly.
+  // Positions are numbered from 1 at the left of the screen.
+
+  int nTeams, nSim;
+  int[][] positions;
+
+  FairnessReport(Fixtures fixtures, int nTeams_) {
+    nTeams = nTeams_;
+    nSim = fixtures.nSim;
+    positions = new int[nTeams+1][nSim];
+    for (int i = 0; i < fixtures.nRows; i++) {
+      for (int j = 0; j < fixtures.rowLength; j++) {
+        positions[fixtures.getTeam(i, j)][j/2]++;
+      }
+    }
+  }
+
+  int spread(int team) {
+    // Difference between most and least used position
+    return max(positions[team]) - min(positions[team]);
+  }
+
+  void print(String title) {
+    println(title);
+    String header = "  Team";
+    for (int p = 1; p <= nSim; p++) {
+      header += String.format("  Pos %d", p);
+    }
+    println(header + "  Spread");
+    int worst = 0;
+    for (int t = 1; t <= nTeams; t++) {
+      String row = String.format("  %4d", t);
+      for (int p = 0; p < nSim; p++) {
+        row += String.format("  %5d", positions[t][p]);
+      }
+      println(row + String.format("  %6d", spread(t)));
+      worst = max(worst, spread(t));
+    }
+    println("  Largest spread: " + worst);
+  }
+
+  int totalSpread() {
+    // Sum of spreads over every team, which fixture search tries to keep low
+    int total = 0;
+    for (int t = 1; t <= nTeams; t++) {
+      total += spread(t);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,118 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class FixtureBundle {
+  // Serves fixture lists from data/fixtures.bin, which is built from the CSV
+  // files in data/nsim-nteams by tools/BundleFixtures.java. The file is
+  // memory-mapped once and lists are copied straight out of it without any
+  // parsing. Each list keeps a checksum of the CSV file it was built from,
+  // and the first time a list is asked for its file is checked against it,
+  // so that a list whose file has been changed since is read from the file
+  // instead. See BundleFixtures.java for the file layout.
+
+  final int MAGIC = 0x49434546;
+  final int VERSION = 2;
+  final int HEADER_BYTES = 8;
+  final int ENTRY_BYTES = 12;
+
+  int nLists;
+  int[] sourceChecks;
+  MappedByteBuffer buffer;
+
+  FixtureBundle(String path) {
+    nLists = 0;
+    sourceChecks = new int[0];
+    buffer = null;
+
+    // Map file, leaving bundle empty if it is missing or unreadable
+    File bundleFile = dataFile(path);
+    if (!bundleFile.exists()) {
+      println("No fixture bundle found at " + bundleFile + ", using CSV files");
+      return;
+    }
+    try {
+      RandomAccessFile file = new RandomAccessFile(bundleFile, "r");
+      try {
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      } finally {
+        // Mapping stays valid after the file is closed
+        file.close();
+      }
+    } catch (IOException e) {
+      println("Could not read fixture bundle: " + e.getMessage());
+      return;
+    }
+
+    // Check header
+    if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+      println("Fixture bundle " + bundleFile + " is not in a known format, using CSV files");
+      buffer = null;
+      return;
+    }
+    nLists = buffer.getShort(6);
+    sourceChecks = new int[nLists];
+  }
+
+  int checksum(File file) {
+    // CRC-32 of whole file, as written by BundleFixtures.java, or 0 if it can't be read
+    byte[] bytes = loadBytes(file.getPath());
+    if (bytes == null) {
+      return 0;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return (int) crc.getValue();
+  }
+
+  Fixtures getFixtures(int nSim, int nTeams) {
+    // Returns requested list, or null if it is not in the bundle
+    for (int i = 0; i < nLists; i++) {
+      int entry = HEADER_BYTES + i*ENTRY_BYTES;
+      if (buffer.get(entry) == nSim && buffer.get(entry+1) == nTeams) {
+        if (!isCurrent(i, nSim, nTeams)) {
+          return null;
+        }
+        Fixtures fixtures = new Fixtures(buffer.getShort(entry+2), nSim);
+        ByteBuffer data = buffer.duplicate();
+        data.position(buffer.getInt(entry+4));
+        data.asShortBuffer().get(fixtures.teams);
+        return fixtures;
+      }
+    }
+    return null;
+  }
+
+  boolean isCurrent(int i, int nSim, int nTeams) {
+    // Whether list's CSV file is unchanged since bundle was built (or has gone), remembering the answer
+    // Threads which check at once reach the same answer, so the check needn't be locked
+    if (sourceChecks[i] == 0) {
+      File source = dataFile("nsim-nteams/" + nSim + "-" + nTeams + ".csv");
+      boolean isUnchanged = !source.exists() || checksum(source) == buffer.getInt(HEADER_BYTES + i*ENTRY_BYTES + 8);
+      if (!isUnchanged) {
+        println("Fixture bundle is out of date for " + source + ", using CSV file (rebuild it with tools/BundleFixtures.java)");
+      }
+      sourceChecks[i] = isUnchanged ? 1 : -1;
+    }
+    return sourceChecks[i] > 0;
+  }
+}
@@ -0,0 +1,229 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class FixtureGenerator {
+  // Builds a round-robin schedule one row at a time for any number of teams
+  // and simultaneous games. Pairings come from the circle method, with the
+  // teams shuffled for each new cycle, so that every pair meets once per
+  // cycle. Each place on the ice is then filled from the pending pairings,
+  // choosing the one that avoids teams playing back-to-back, then the one
+  // whose teams have played fewest games, then the one whose teams have
+  // rested longest. Each game needs two teams of its own, so there must be
+  // at least twice as many teams as games at once.
+
+  int nTeams, nSim, nRowsMade, nCircle, roundNo;
+  long seed;
+  int[] gamesPlayed, lastPlayed, circle, pending;
+  int nPending, lookAhead;
+  boolean[] inRow;
+  Random random;
+
+  FixtureGenerator(int nTeams_, int nSim_, long seed_) {
+    // A row could never be filled with too few teams
+    if (nSim_ < 1 || nTeams_ < 2*nSim_) {
+      throw new IllegalArgumentException("Can't make fixtures for " + nTeams_ + " teams with " + nSim_ + " games at once");
+    }
+    nTeams = nTeams_;
+    nSim = nSim_;
+    nRowsMade = 0;
+    seed = seed_;
+    random = new Random(seed);
+
+    // Team numbers run from 1 to nTeams so index arrays from 1
+    gamesPlayed = new int[nTeams+1];
+    lastPlayed = new int[nTeams+1];
+    inRow = new boolean[nTeams+1];
+    for (int t = 1; t <= nTeams; t++) {
+      lastPlayed[t] = -nTeams;
+    }
+
+    // Pad odd numbers of teams with a bye (team 0)
+    nCircle = nTeams + nTeams%2;
+    circle = new int[nCircle];
+    roundNo = 0;
+
+    // Pending pairings are held as left/right pairs, topped up to at least lookAhead before each row
+    lookAhead = max(2*nSim, nTeams);
+    pending = new int[2*(lookAhead + nCircle/2)];
+    nPending = 0;
+  }
+
+  void addRound() {
+    // Appends one round of the circle method to the pending pairings
+    if (2*(nPending + nCircle/2) > pending.length) {
+      pending = expand(pending, 2*pending.length);
+    }
+    if (roundNo == 0) {
+      // Start a new cycle with the teams in a random order
+      for (int i = 0; i < nCircle; i++) {
+        circle[i] = i < nTeams ? i+1 : 0;
+      }
+      for (int i = nCircle-1; i > 0; i--) {
+        int j = random.nextInt(i+1);
+        int swap = circle[i];
+        circle[i] = circle[j];
+        circle[j] = swap;
+      }
+    }
+    for (int i = 0; i < nCircle/2; i++) {
+      int left = circle[i];
+      int right = circle[nCircle-1-i];
+      if (left != 0 && right != 0) {
+        pending[2*nPending] = left;
+        pending[2*nPending+1] = right;
+        nPending++;
+      }
+    }
+
+    // Keep first team fixed and rotate the rest by one place
+    int last = circle[nCircle-1];
+    for (int i = nCircle-1; i > 1; i--) {
+      circle[i] = circle[i-1];
+    }
+    circle[1] = last;
+    roundNo = (roundNo+1) % (nCircle-1);
+  }
+
+  Fixtures generate(int nRows) {
+    // Returns a whole list of the given length
+    Fixtures fixtures = new Fixtures(nRows, nSim);
+    for (int i = 0; i < nRows; i++) {
+      nextRow(fixtures, i);
+    }
+    fixtures.seed = seed;
+    return fixtures;
+  }
+
+  void nextRow(Fixtures fixtures, int row) {
+    // Fills the given row with the next set of games
+    while (nPending < lookAhead) {
+      addRound();
+    }
+    for (int t = 1; t <= nTeams; t++) {
+      inRow[t] = false;
+    }
+
+    for (int game = 0; game < nSim; game++) {
+      // Find best pending pairing whose teams are both free
+      int best = -1;
+      int bestBackToBack = 0;
+      int bestGames = 0;
+      int bestLongestRest = 0;
+      int bestShortestRest = 0;
+      for (int i = 0; i < nPending; i++) {
+        int left = pending[2*i];
+        int right = pending[2*i+1];
+        if (inRow[left] || inRow[right]) {
+          continue;
+        }
+        int backToBack = (lastPlayed[left] == nRowsMade-1 ? 1 : 0) + (lastPlayed[right] == nRowsMade-1 ? 1 : 0);
+        int games = gamesPlayed[left] + gamesPlayed[right];
+        int longestRest = nRowsMade - min(lastPlayed[left], lastPlayed[right]);
+        int shortestRest = nRowsMade - max(lastPlayed[left], lastPlayed[right]);
+        if (best < 0 || backToBack < bestBackToBack
+          || (backToBack == bestBackToBack && games < bestGames)
+          || (backToBack == bestBackToBack && games == bestGames && longestRest > bestLongestRest)
+          || (backToBack == bestBackToBack && games == bestGames && longestRest == bestLongestRest && shortestRest > bestShortestRest)) {
+          best = i;
+          bestBackToBack = backToBack;
+          bestGames = games;
+          bestLongestRest = longestRest;
+          bestShortestRest = shortestRest;
+        }
+      }
+      if (best < 0) {
+        // Every pending pairing clashes with a game already in this row, so add another round
+        addRound();
+        game--;
+        continue;
+      }
+
+      // Record game and remove it from pending pairings
+      int left = pending[2*best];
+      int right = pending[2*best+1];
+      fixtures.setTeam(row, 2*game, left);
+      fixtures.setTeam(row, 2*game+1, right);
+      inRow[left] = true;
+      inRow[right] = true;
+      gamesPlayed[left]++;
+      gamesPlayed[right]++;
+      lastPlayed[left] = nRowsMade;
+      lastPlayed[right] = nRowsMade;
+      arrayCopy(pending, 2*(best+1), pending, 2*best, 2*(nPending-best-1));
+      nPending--;
+    }
+    nRowsMade++;
+  }
+}
+
+class FixtureCache {
+  // Keeps generated lists so that each one is only built once
+  // Safe to use from several threads at once. The first thread to ask for a
+  // list generates it, without holding any lock, and any others asking for
+  // the same list at the same time wait for that one rather than all of
+  // them waiting for every list being generated.
+
+  final int GENERATED_ROWS = 50;
+
+  ConcurrentHashMap<String, FutureTask<Fixtures>> lists;
+
+  FixtureCache() {
+    lists = new ConcurrentHashMap<String, FutureTask<Fixtures>>();
+  }
+
+  Fixtures generate(int nSim, int nTeams, long seed) {
+    return new FixtureGenerator(nTeams, nSim, seed).generate(GENERATED_ROWS);
+  }
+
+  Fixtures getFixtures(final int nSim, final int nTeams, final long seed) {
+    // Returns a copy which the caller is free to permute
+    String key = nSim + "-" + nTeams + "-" + seed;
+    FutureTask<Fixtures> list = lists.get(key);
+    if (list == null) {
+      FutureTask<Fixtures> newList = new FutureTask<Fixtures>(new Callable<Fixtures>() {
+        public Fixtures call() {
+          return generate(nSim, nTeams, seed);
+        }
+      });
+      list = lists.putIfAbsent(key, newList);
+      if (list == null) {
+        list = newList;
+        list.run();
+      }
+    }
+    try {
+      return list.get().copy();
+    } catch (InterruptedException e) {
+      // Stop waiting for whoever is generating it and make our own, leaving the interrupt for the caller to notice
+      Thread.currentThread().interrupt();
+      return generate(nSim, nTeams, seed);
+    } catch (ExecutionException e) {
+      // Generator refused (too few teams), so don't keep the failure and pass on what it threw
+      lists.remove(key, list);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
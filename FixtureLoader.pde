@@ -0,0 +1,100 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class FixtureLoader {
+  // Prepares fixture lists on a background thread while session details are
+  // being entered, so that pressing 'START' only has to swap in a list which
+  // is already loaded and permuted. Only the most recent request is kept,
+  // and a search for one which has been replaced is stopped straight away.
+
+  ExecutorService worker;
+  Future<Fixtures> pending;
+  AtomicBoolean isPendingCancelled;
+  int pendingSim, pendingTeams;
+
+  FixtureLoader() {
+    worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "Fixture loader");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    pending = null;
+    isPendingCancelled = new AtomicBoolean(false);
+  }
+
+  Fixtures load(int nSim, int nTeams, AtomicBoolean isCancelled) {
+    // Chooses best rotation of shipped list, or best generated list if nothing is shipped
+    return fixtureSearch.findBest(nSim, nTeams, loadShipped(nSim, nTeams), isCancelled);
+  }
+
+  Fixtures loadShipped(int nSim, int nTeams) {
+    // Loads list from bundle (or CSV file if missing), or returns null if there isn't one
+    Fixtures shipped = fixtureBundle.getFixtures(nSim, nTeams);
+    String fixtureFile = "nsim-nteams/" + nSim + "-" + nTeams + ".csv";
+    if (shipped == null && dataFile(fixtureFile).exists()) {
+      shipped = new Fixtures(loadTable(fixtureFile));
+    }
+    return shipped;
+  }
+
+  Fixtures rebuild(int nSim, int nTeams, long permutationSeed) {
+    // Returns the same list as an earlier session which used this seed
+    return fixtureSearch.makeCandidate(nSim, nTeams, loadShipped(nSim, nTeams), permutationSeed);
+  }
+
+  void prepare(final int nSim, final int nTeams) {
+    // Cancel stale request and start loading in background
+    if (pending != null) {
+      isPendingCancelled.set(true);
+      pending.cancel(true);
+    }
+    final AtomicBoolean isCancelled = new AtomicBoolean(false);
+    isPendingCancelled = isCancelled;
+    pendingSim = nSim;
+    pendingTeams = nTeams;
+    pending = worker.submit(new Callable<Fixtures>() {
+      public Fixtures call() {
+        return load(nSim, nTeams, isCancelled);
+      }
+    });
+  }
+
+  Fixtures take(int nSim, int nTeams) {
+    // Returns prepared list if it matches, otherwise loads one straight away
+    Fixtures fixtures = null;
+    if (pending != null && !pending.isCancelled() && pendingSim == nSim && pendingTeams == nTeams) {
+      try {
+        fixtures = pending.get();
+      } catch (Exception e) {
+        println("Background fixture loading failed: " + e);
+      }
+    }
+    pending = null;
+    if (fixtures == null) {
+      fixtures = load(nSim, nTeams, new AtomicBoolean(false));
+    }
+    return fixtures;
+  }
+}
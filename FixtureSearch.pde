@@ -0,0 +1,168 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+interface FixtureCost {
+  // Scores a fixture list, lower being better
+  float score(Fixtures fixtures, int nTeams);
+
+  // No list of this length can score less, so a search can stop at one which scores this
+  float lowerBound(int nSim, int nTeams, int nRows);
+}
+
+class RestCost implements FixtureCost {
+  // Penalises back-to-back games most, then long waits between games, then
+  // teams playing more often in one part of the rink than another
+
+  final float BACK_TO_BACK_WEIGHT = 100;
+  final float LONGEST_REST_WEIGHT = 10;
+  final float POSITION_WEIGHT = 1;
+
+  public float lowerBound(int nSim, int nTeams, int nRows) {
+    // Teams in the first row count as back-to-back (as if they had played just before), and without two
+    // rows' worth of teams, some must play again straight away in every row after the first
+    int rowTeams = 2*nSim;
+    int backToBack = rowTeams + max(0, 2*rowTeams - nTeams) * max(0, nRows-1);
+
+    // Last team on the ice waits for every other team to have played first
+    int firstRows = (nTeams + rowTeams - 1) / rowTeams;
+    return BACK_TO_BACK_WEIGHT*backToBack + LONGEST_REST_WEIGHT*(firstRows-1);
+  }
+
+  public float score(Fixtures fixtures, int nTeams) {
+    int[] lastPlayed = new int[nTeams+1];
+    int backToBack = 0;
+    int longestRest = 0;
+    for (int t = 1; t <= nTeams; t++) {
+      lastPlayed[t] = -1;
+    }
+
+    // Count rests over whole list
+    for (int i = 0; i < fixtures.nRows; i++) {
+      for (int j = 0; j < fixtures.rowLength; j++) {
+        int team = fixtures.getTeam(i, j);
+        if (lastPlayed[team] == i-1) {
+          backToBack++;
+        }
+        longestRest = max(longestRest, i-lastPlayed[team]-1);
+        lastPlayed[team] = i;
+      }
+    }
+
+    // Add up difference between most and least used position for each team, as reported after each session
+    int positionSpread = new FairnessReport(fixtures, nTeams).totalSpread();
+
+    return BACK_TO_BACK_WEIGHT*backToBack + LONGEST_REST_WEIGHT*longestRest + POSITION_WEIGHT*positionSpread;
+  }
+}
+
+class FixtureSearch {
+  // Tries many random fixture lists in parallel on every core and returns the
+  // best one found within a time budget, or as soon as one is found which
+  // can't be beaten. Candidates are either the shipped list with different
+  // rotations of its rows, or generated lists (with rotations) when nothing
+  // is shipped for the requested session.
+
+  final int GENERATOR_SEEDS = 256;
+
+  long budgetMillis;
+  FixtureCost cost;
+  ForkJoinPool pool;
+
+  FixtureSearch(FixtureCost cost_, long budgetMillis_) {
+    cost = cost_;
+    budgetMillis = budgetMillis_;
+    pool = new ForkJoinPool();
+  }
+
+  Fixtures findBest(final int nSim, final int nTeams, final Fixtures shipped, final AtomicBoolean isCancelled) {
+    // Returns null only if the search is cancelled (which stops every task straight away) or the calling thread is interrupted
+    // Start one searching task per core, each keeping its own best candidate until any of them finds a perfect one
+    final long deadline = System.nanoTime() + budgetMillis*1000000L;
+    final AtomicBoolean isPerfect = new AtomicBoolean(false);
+    ArrayList<Callable<Fixtures>> tasks = new ArrayList<Callable<Fixtures>>();
+    for (int i = 0; i < pool.getParallelism(); i++) {
+      tasks.add(new Callable<Fixtures>() {
+        public Fixtures call() {
+          Random random = new Random();
+          Fixtures best = null;
+          float bestScore = 0;
+          do {
+            Fixtures candidate = makeCandidate(nSim, nTeams, shipped, random.nextLong());
+            float score = cost.score(candidate, nTeams);
+            if (best == null || score < bestScore) {
+              best = candidate;
+              bestScore = score;
+            }
+            if (score <= cost.lowerBound(nSim, nTeams, candidate.nRows)) {
+              isPerfect.set(true);
+            }
+          } while (System.nanoTime() < deadline && !isPerfect.get() && !isCancelled.get());
+          return best;
+        }
+      });
+    }
+
+    // Pick best result from all tasks
+    Fixtures best = null;
+    float bestScore = 0;
+    try {
+      List<Future<Fixtures>> results = pool.invokeAll(tasks);
+      if (isCancelled.get()) {
+        return null;
+      }
+      for (Future<Fixtures> result : results) {
+        Fixtures candidate = result.get();
+        float score = cost.score(candidate, nTeams);
+        if (best == null || score < bestScore) {
+          best = candidate;
+          bestScore = score;
+        }
+      }
+    } catch (InterruptedException e) {
+      // Search is no longer wanted
+      return null;
+    } catch (ExecutionException e) {
+      println("Fixture search failed: " + e.getCause());
+    }
+
+    // Fall back to a single candidate if search went wrong
+    if (best == null) {
+      best = makeCandidate(nSim, nTeams, shipped, new Random().nextLong());
+    }
+    return best;
+  }
+
+  Fixtures makeCandidate(int nSim, int nTeams, Fixtures shipped, long permutationSeed) {
+    // Same seed always gives the same candidate, so that a session can be rebuilt from it
+    Random random = new Random(permutationSeed);
+    Fixtures candidate;
+    if (shipped != null) {
+      candidate = shipped.copy();
+    } else {
+      candidate = fixtureCache.getFixtures(nSim, nTeams, random.nextInt(GENERATOR_SEEDS));
+    }
+    candidate.permute(random);
+    candidate.permutationSeed = permutationSeed;
+    return candidate;
+  }
+}
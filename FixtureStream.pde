@@ -0,0 +1,99 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class FixtureStream {
+  // Produces the fixtures for any game number on demand, so that a session
+  // can go on for as long as it likes. The list chosen at the start of the
+  // session supplies the first games. After that a generated list carries on
+  // from where its generator left off, and a shipped list starts again from
+  // the top with fresh rotations, drawn from the list's permutation seed so
+  // that a resumed session sees the same games. Only a small window of
+  // recent and upcoming games is held, in a ring buffer.
+  // Asking for a game can move the buffer on, so a stream belongs to the
+  // first thread which asks (the animation thread). Other threads see its
+  // games through snapshots.
+
+  final int HISTORY = 50;
+
+  Fixtures source, window;
+  FixtureGenerator generator;
+  Random random;
+  int nextGame;
+  Thread owner;
+
+  FixtureStream() {
+    // Empty stream, used before a session has started
+    source = new Fixtures();
+    window = new Fixtures();
+    generator = null;
+    nextGame = 1;
+  }
+
+  FixtureStream(Fixtures source_, int nTeams, int lookAhead) {
+    source = source_;
+    window = new Fixtures(HISTORY + lookAhead, source.nSim);
+    random = new Random(source.permutationSeed);
+    nextGame = 1;
+
+    // Bring generator up to the end of the source list so that it can carry on from there
+    generator = null;
+    if (source.seed >= 0) {
+      generator = new FixtureGenerator(nTeams, source.nSim, source.seed);
+      Fixtures scratch = new Fixtures(1, source.nSim);
+      for (int i = 0; i < source.nRows; i++) {
+        generator.nextRow(scratch, 0);
+      }
+    }
+  }
+
+  void produceNext() {
+    // Fills the next slot of the ring buffer, overwriting the oldest game held
+    int slot = (nextGame-1) % window.nRows;
+    if (nextGame <= source.nRows) {
+      window.copyRow(source, nextGame-1, slot);
+    } else if (generator != null) {
+      generator.nextRow(window, slot);
+      window.offsets[slot] = 2*random.nextInt(window.nSim);
+    } else {
+      window.copyRow(source, (nextGame-1) % source.nRows, slot);
+      window.offsets[slot] = 2*random.nextInt(window.nSim);
+    }
+    nextGame++;
+  }
+
+  int rowFor(int game) {
+    // Returns row of window holding the given game, or -1 if it isn't available
+    if (owner == null) {
+      owner = Thread.currentThread();
+    } else if (owner != Thread.currentThread()) {
+      throw new IllegalStateException("Fixture stream used from " + Thread.currentThread().getName() + " as well as " + owner.getName());
+    }
+    if (game < 1 || window.nRows == 0 || game < nextGame - window.nRows) {
+      return -1;
+    }
+    while (nextGame <= game) {
+      produceNext();
+    }
+    return (game-1) % window.nRows;
+  }
+}
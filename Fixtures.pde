@@ -0,0 +1,123 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class Fixtures {
+  // Compact list of fixtures. Each row holds the teams for nSim simultaneous
+  // games as left/right pairs, and all rows are stored one after another in a
+  // single flat array. Rows are permuted by giving each one an offset into its
+  // own pairs rather than by copying them.
+
+  int nRows, nSim, rowLength;
+  short[] teams;
+  int[] offsets;
+  long seed, permutationSeed;
+
+  Fixtures() {
+    // Empty list, used before a session has started
+    this(0, 0);
+  }
+
+  Fixtures(int nRows_, int nSim_) {
+    nRows = nRows_;
+    nSim = nSim_;
+    rowLength = 2*nSim;
+    teams = new short[nRows*rowLength];
+    offsets = new int[nRows];
+
+    // Seed is only set for generated lists, permutation seed once rows have been rotated
+    seed = -1;
+    permutationSeed = 0;
+  }
+
+  Fixtures(Table table) {
+    // Copy fixtures read from a CSV file
+    this(table.getRowCount(), table.getColumnCount()/2);
+    for (int i = 0; i < nRows; i++) {
+      for (int j = 0; j < rowLength; j++) {
+        setTeam(i, j, table.getInt(i, j));
+      }
+    }
+  }
+
+  Fixtures copy() {
+    Fixtures duplicate = new Fixtures(nRows, nSim);
+    arrayCopy(teams, duplicate.teams);
+    arrayCopy(offsets, duplicate.offsets);
+    duplicate.seed = seed;
+    duplicate.permutationSeed = permutationSeed;
+    return duplicate;
+  }
+
+  void copyRow(Fixtures source, int sourceRow, int row) {
+    // Copies one row (and its rotation) from another list with the same number of games
+    arrayCopy(source.teams, sourceRow*rowLength, teams, row*rowLength, rowLength);
+    offsets[row] = source.offsets[sourceRow];
+  }
+
+  int getTeam(int row, int column) {
+    return teams[row*rowLength + (column+offsets[row]) % rowLength];
+  }
+
+  void permute(Random random) {
+    // Rotates each row after the first by a random number of games, so
+    // that teams don't always play in the same part of the rink
+    offsets[0] = 0;
+    for (int i = 1; i < nRows; i++) {
+      offsets[i] = 2*random.nextInt(nSim);
+    }
+  }
+
+  void setTeam(int row, int column, int team) {
+    teams[row*rowLength + column] = (short) team;
+  }
+}
+
+class FixtureRow {
+  // Read-only view of a single row of a fixture list. Can be moved to another
+  // row without allocating anything.
+
+  Fixtures fixtures;
+  int row;
+
+  FixtureRow() {
+    fixtures = null;
+    row = 0;
+  }
+
+  int getMatchCount() {
+    // No matches if not pointing at a valid row
+    if (fixtures == null || row < 0 || row >= fixtures.nRows) {
+      return 0;
+    }
+    return fixtures.nSim;
+  }
+
+  int getTeam(int column) {
+    return fixtures.getTeam(row, column);
+  }
+
+  void setRow(Fixtures newFixtures, int newRow) {
+    fixtures = newFixtures;
+    row = newRow;
+  }
+}
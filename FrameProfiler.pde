@@ -0,0 +1,208 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class FrameHistogram {
+  // Counts of durations in buckets which are 1 us wide up to 32 us, then
+  // sixteen to each doubling, so that every bucket is within about 6% of
+  // its true value. All buckets are allocated up front, so recording a time
+  // never allocates and costs only a few instructions.
+
+  final int SUB_BUCKETS = 16;
+  final int N_BUCKETS = 25*16;
+
+  long[] counts;
+  long total, maxMicros;
+
+  FrameHistogram() {
+    counts = new long[N_BUCKETS];
+    reset();
+  }
+
+  int bucketFor(long micros) {
+    if (micros < 2*SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - 4;
+    return Math.min(SUB_BUCKETS*(shift+1) + (int) (micros >> shift) - SUB_BUCKETS, N_BUCKETS-1);
+  }
+
+  long microsFor(int bucket) {
+    // Returns middle of bucket's range
+    if (bucket < 2*SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket/SUB_BUCKETS - 1;
+    long lowest = (long) (bucket%SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lowest + (1L << shift)/2;
+  }
+
+  long percentile(float p) {
+    // Returns duration in us which the given percentage of recorded times are no longer than
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+    long seen = 0;
+    for (int i = 0; i < N_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(microsFor(i), maxMicros);
+      }
+    }
+    return maxMicros;
+  }
+
+  void record(long nanos) {
+    long micros = nanos / 1000;
+    counts[bucketFor(micros)]++;
+    total++;
+    maxMicros = Math.max(maxMicros, micros);
+  }
+
+  void reset() {
+    Arrays.fill(counts, 0);
+    total = 0;
+    maxMicros = 0;
+  }
+}
+
+class FrameProfiler {
+  // Times each part of a frame, so that it can be seen which part is to blame
+  // when the display stutters. Times are kept in histograms which cover the
+  // current period; every period the percentiles are appended to
+  // frame-times.csv in the sketch folder (if a period is set) and a new
+  // period begins. The overlay shows the latest percentiles, and is only
+  // brought up to date when a frame is drawn anyway.
+
+  final String[] SECTIONS = {
+    "events", "background", "update", "match list", "control panel", "session bar", "publish", "frame"
+  };
+  final int EVENTS = 0;
+  final int BACKGROUND = 1;
+  final int UPDATE = 2;
+  final int MATCH_LIST = 3;
+  final int CONTROL_PANEL = 4;
+  final int SESSION_BAR = 5;
+  final int PUBLISH = 6;
+  final int FRAME = 7;
+  final float[] PERCENTILES = {
+    50, 90, 99
+  };
+
+  FrameHistogram[] histograms;
+  long frameStart, sectionStart, periodStart, periodNanos;
+  boolean isVisible;
+  PFont overlayFont;
+  File output;
+
+  FrameProfiler(int periodSecs) {
+    overlayFont = assets.getFont("fonts/SquarishSansCTRegular-24.vlw");
+    histograms = new FrameHistogram[SECTIONS.length];
+    for (int i = 0; i < SECTIONS.length; i++) {
+      histograms[i] = new FrameHistogram();
+    }
+    periodNanos = periodSecs * 1000000000L;
+    periodStart = clock.nanoTime();
+    output = new File(sketchPath("frame-times.csv"));
+    isVisible = false;
+  }
+
+  void beginFrame() {
+    frameStart = System.nanoTime();
+    sectionStart = frameStart;
+  }
+
+  void display() {
+    // Draws percentiles for each section over bottom left of match list
+    int lineHeight = 22;
+    int x = 10;
+    int y = height - 60 - lineHeight*SECTIONS.length;
+    fill(0, 200);
+    rect(x, y - lineHeight - 10, 470, lineHeight*(SECTIONS.length+1) + 10);
+    fill(255);
+    textFont(overlayFont);
+    textAlign(LEFT);
+    text("us", x+10, y);
+    textAlign(RIGHT);
+    for (int j = 0; j < PERCENTILES.length; j++) {
+      text("p" + int(PERCENTILES[j]), x+270+j*80, y);
+    }
+    for (int i = 0; i < SECTIONS.length; i++) {
+      y += lineHeight;
+      textAlign(LEFT);
+      text(SECTIONS[i], x+10, y);
+      textAlign(RIGHT);
+      for (int j = 0; j < PERCENTILES.length; j++) {
+        text((int) histograms[i].percentile(PERCENTILES[j]), x+270+j*80, y);
+      }
+    }
+  }
+
+  void endFrame() {
+    // Records whole frame, then starts new period if current one is over
+    long now = System.nanoTime();
+    histograms[FRAME].record(now - frameStart);
+    if (periodNanos > 0 && clock.nanoTime() - periodStart >= periodNanos) {
+      save();
+      for (FrameHistogram histogram : histograms) {
+        histogram.reset();
+      }
+      periodStart = clock.nanoTime();
+    }
+  }
+
+  void endSection(int section) {
+    // Records time since end of previous section
+    long now = System.nanoTime();
+    histograms[section].record(now - sectionStart);
+    sectionStart = now;
+  }
+
+  void save() {
+    // Appends a line for each section to the CSV file, with a header if it is new
+    boolean isNew = !output.exists();
+    PrintWriter writer = null;
+    try {
+      writer = new PrintWriter(new FileOutputStream(output, true));
+      if (isNew) {
+        writer.println("time,section,frames,p50_us,p90_us,p99_us,max_us");
+      }
+      long wallNow = clock.wallMillis();
+      for (int i = 0; i < SECTIONS.length; i++) {
+        FrameHistogram histogram = histograms[i];
+        writer.println(String.format("%tF %<tT,%s,%d,%d,%d,%d,%d", wallNow, SECTIONS[i], histogram.total, histogram.percentile(50), histogram.percentile(90), histogram.percentile(99), histogram.maxMicros));
+      }
+    } catch (IOException e) {
+      println("Could not save frame times: " + e.getMessage());
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+
+  void toggle() {
+    isVisible = !isVisible;
+  }
+}
@@ -0,0 +1,75 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class HoverAreas {
+  // Screen rectangles which light up when the pointer is over them, gathered
+  // from the widgets at the end of each frame. Once published a set is never
+  // changed, so the redraw timer and mouse handler can tell when the pointer
+  // has moved onto or off a widget without reading the widgets themselves.
+
+  int[] bounds;
+  int nAreas;
+
+  HoverAreas() {
+    bounds = new int[64];
+    nAreas = 0;
+  }
+
+  void add(int left, int top, int right, int bottom) {
+    // Edges are inclusive, as in the widgets' own hit tests
+    if (4*(nAreas+1) > bounds.length) {
+      bounds = expand(bounds, 2*bounds.length);
+    }
+    bounds[4*nAreas] = left;
+    bounds[4*nAreas+1] = top;
+    bounds[4*nAreas+2] = right;
+    bounds[4*nAreas+3] = bottom;
+    nAreas++;
+  }
+
+  int areaAt(int pointerX, int pointerY) {
+    // Returns index of area under pointer, or -1 if there is none
+    for (int i = 0; i < nAreas; i++) {
+      if (pointerX >= bounds[4*i] && pointerY >= bounds[4*i+1] && pointerX <= bounds[4*i+2] && pointerY <= bounds[4*i+3]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  void clear() {
+    nAreas = 0;
+  }
+
+  boolean sameAs(HoverAreas other) {
+    if (other == null || other.nAreas != nAreas) {
+      return false;
+    }
+    for (int i = 0; i < 4*nAreas; i++) {
+      if (bounds[i] != other.bounds[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -21,7 +21,47 @@
 //    <joe.cridge@me.com>
 //
 
+import java.awt.Font;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
 import javax.swing.ImageIcon;
 
 final color TIMER_GREY = color(60);
@@ -29,17 +69,66 @@ final color TIMER_GREEN = color(0, 175, 0);
 final color TIMER_AMBER = color(220, 130, 0);
 final color TIMER_RED = color(195, 0, 0);
 
+// Interval between checks for changes to the display, which also caps the
+// frame rate at about 30 fps while the match list is scrolling
+final int REDRAW_POLL_MILLIS = 33;
+
+// Time allowed for choosing the best fixture list when a session starts
+final int FIXTURE_SEARCH_MILLIS = 200;
+
+// Kinds of timer event, and warning times used if prefs.csv doesn't give any
+final int GAME_WARNING = 0;
+final int GAME_END = 1;
+final int SESSION_WARNING = 2;
+final int SESSION_END = 3;
+final int[] DEFAULT_GAME_WARNING_SECS = {
+  30, 10
+};
+final int[] DEFAULT_SESSION_WARNING_MINS = {
+  15, 5
+};
+
 boolean inSession, fullScreen;
 color highlight;
 
+// Keys and clicks from the event thread, acted on at the start of the next frame
+ConcurrentLinkedQueue<Event> inputs;
+
+// What the last frame showed, published by draw() for the redraw timer and mouse handler
+volatile HoverAreas drawnAreas;
+volatile int drawnArea, drawnWidth, drawnHeight, pointerX, pointerY;
+volatile long nextChangeNanos;
+HoverAreas spareAreas;
+
+Clock clock;
+SessionEngine engine;
+Assets assets;
+LabelCache labels;
+LayerCache layerCache;
+Layout layout;
+FixtureBundle fixtureBundle;
+FixtureCache fixtureCache;
+FixtureSearch fixtureSearch;
+FixtureLoader fixtureLoader;
+DeadlineTimer deadlines;
+SessionJournal journal;
 ControlPanel controlPanel;
 SessionBar sessionBar;
 MatchList matchList;
+Timer redrawTimer;
+PublicDisplay publicDisplay;
+Broadcaster broadcaster;
+FrameProfiler profiler;
 
 void setup() {
   // Initialise global variables
+  clock = new SystemClock();
+  assets = new Assets();
+  labels = new LabelCache();
   inSession = false;
   highlight = TIMER_GREEN;
+  inputs = new ConcurrentLinkedQueue<Event>();
+  spareAreas = new HoverAreas();
 
   // Load preferences
   Table prefs = loadTable("prefs.csv");
@@ -49,41 +138,136 @@ void setup() {
   int endMin = prefs.getInt(4, dayNumber());
   int nTeams = prefs.getInt(5, 1);
   int matchLength = prefs.getInt(6, 1);
-  int nSim;
-  if (nTeams < halfIceThresh) {
-    nSim = 1;
-  } else if (nTeams < thirdIceThresh) {
-    nSim = 2;
-  } else {
-    nSim = 3;
+  int[] simThresholds = concat(new int[] {
+    halfIceThresh, thirdIceThresh
   }
+  , prefInts(prefs, 15, new int[0]));
+  int nSim = simFor(nTeams, simThresholds);
   fullScreen = boolean(prefs.getString(7, 1));
+  int[] gameWarningSecs = prefInts(prefs, 8, DEFAULT_GAME_WARNING_SECS);
+  int[] sessionWarningMins = prefInts(prefs, 9, DEFAULT_SESSION_WARNING_MINS);
+  boolean soundCues = prefs.getRowCount() <= 10 || boolean(prefs.getString(10, 1));
+  int publicScreen = prefs.getRowCount() > 11 ? prefs.getInt(11, 1) : 0;
+  int broadcastPort = prefs.getRowCount() > 12 ? prefs.getInt(12, 1) : 0;
+  int frameTimesSecs = prefs.getRowCount() > 13 ? prefs.getInt(13, 1) : 0;
+  String renderer = prefs.getRowCount() > 14 && prefs.getString(14, 1).trim().equals("P2D") ? P2D : JAVA2D;
 
   // Initialise frame
+  // Choosing P2D makes Processing start setup() again, so nothing before here may be started twice
   if (fullScreen) {
-    size(displayWidth, displayHeight);
+    size(displayWidth, displayHeight, renderer);
   } else {
-    size(1000, 700);
+    size(1000, 700, renderer);
   }
   background(highlight);
   noStroke();
   smooth();
 
+  // Prepare fixture sources
+  fixtureBundle = new FixtureBundle("fixtures.bin");
+  fixtureCache = new FixtureCache();
+  fixtureSearch = new FixtureSearch(new RestCost(), FIXTURE_SEARCH_MILLIS);
+  fixtureLoader = new FixtureLoader();
+
   // Create interface components
+  layerCache = new LayerCache();
+  layout = new Layout(width, height, nSim);
+  engine = new SessionEngine(matchLength);
+  journal = new SessionJournal("session.journal");
+  deadlines = new DeadlineTimer(gameWarningSecs, sessionWarningMins, new AudioCues(soundCues, gameWarningSecs.length));
   String clubName = prefs.getString(0, 1);
-  PImage clubLogo = loadImage("images/logo.png");
+  PImage clubLogo = assets.getImage("images/logo.png");
   String panelTitle = dayName() + " " + clubName;
-  controlPanel = new ControlPanel(panelTitle, clubLogo, endHour, endMin, nTeams, nSim, halfIceThresh, thirdIceThresh);
+  controlPanel = new ControlPanel(panelTitle, clubLogo, endHour, endMin, nTeams, nSim, simThresholds);
   sessionBar = new SessionBar();
-  matchList = new MatchList(nSim, matchLength);
+  matchList = new MatchList(nSim);
+  profiler = new FrameProfiler(frameTimesSecs);
+
+  // Simulate sessions instead of running the timer if asked to on the command line
+  String simulation = commandLineOption("--simulate");
+  if (simulation != null) {
+    String spec = simulation.length() > 0 ? simulation : nTeams + "x" + nSim + "x180," + (nTeams+4) + "x" + nSim + "x120";
+    new Simulation(matchLength, gameWarningSecs, sessionWarningMins, 0).runAll(spec);
+    exit();
+    return;
+  }
+
+  // Time frames and fixture handling instead of running the timer if asked to on the command line
+  if (commandLineOption("--benchmark") != null) {
+    new Benchmark().runAll();
+    exit();
+    return;
+  }
+
+  // Run checks instead of the timer if asked to on the command line, exiting with status 1 if any fail
+  if (commandLineOption("--selftest") != null) {
+    boolean passed = new SelfTest().runAll();
+    System.exit(passed ? 0 : 1);
+  }
+  fixtureLoader.prepare(nSim, nTeams);
+  resumeSession();
 
   // Set window properties
   ImageIcon titlebaricon = new ImageIcon(loadBytes("images/icon_16.gif"));
   frame.setIconImage(titlebaricon.getImage());
   frame.setTitle(panelTitle + " | IceTimer 1.2");
+  frame.setResizable(!fullScreen);
+  assets.printReport();
+
+  // Open public display on another screen if one is chosen in prefs.csv
+  // It gets its own copies of fonts, as glyph caches aren't safe to share between windows
+  publicDisplay = null;
+  if (publicScreen > 0) {
+    PFont smallFont = loadFont("fonts/SquarishSansCTRegular-24.vlw");
+    PFont mediumFont = loadFont("fonts/SquarishSansCTRegular-48.vlw");
+    PFont largeFont = loadFont("fonts/SquarishSansCTRegular-66.vlw");
+    publicDisplay = new PublicDisplay(publicScreen, smallFont, mediumFont, largeFont);
+    publicDisplay.start(clubName + " public display");
+  }
+
+  // Serve game state over the network if a port is chosen in prefs.csv
+  broadcaster = null;
+  if (broadcastPort > 0) {
+    broadcaster = new Broadcaster(broadcastPort);
+    if (!broadcaster.start()) {
+      broadcaster = null;
+    }
+  }
+
+  // Only draw new frames when something on screen has changed
+  // Input then arrives on the event thread, so handlers only queue it for draw()
+  noLoop();
+  redrawTimer = new Timer(true);
+  redrawTimer.scheduleAtFixedRate(new TimerTask() {
+    public void run() {
+      checkForRedraw();
+    }
+  }, REDRAW_POLL_MILLIS, REDRAW_POLL_MILLIS);
 }
 
 void draw() {
+  profiler.beginFrame();
+
+  // Act on keys and clicks first, so that a skip or end makes any deadline it overtook stale
+  Event input = inputs.poll();
+  while (input != null) {
+    if (input instanceof KeyEvent) {
+      handleKey(((KeyEvent) input).getKey());
+    } else {
+      MouseEvent click = (MouseEvent) input;
+      handleClick(click.getX(), click.getY());
+    }
+    input = inputs.poll();
+  }
+
+  // Act on any warnings or deadlines which have passed
+  TimerEvent event = deadlines.poll();
+  while (event != null) {
+    matchList.handle(event);
+    sessionBar.handle(event);
+    event = deadlines.poll();
+  }
+
   // Update highlight colour if necessary
   if (sessionBar.hasChangedColour) {
     color newColour = sessionBar.getHighlightColour();
@@ -92,43 +276,54 @@ void draw() {
     sessionBar.hasChangedColour = false;
   }
 
-  // Texture background
-  background(highlight);
-  fill(lerpColor(highlight, TIMER_GREY, 0.1));
-  for (int i = 0; i < height; i++) {
-    if (int(i/3.0) % 2 == 1) {
-      rect(0, i, width, 1);
-    }
+  // Lay out interface again if window has been resized
+  if (layout.update(width, height, layout.nSim)) {
+    controlPanel.applyLayout();
+    matchList.applyLayout();
   }
 
+  // Texture background (redrawn from cache)
+  profiler.endSection(profiler.EVENTS);
+  layerCache.displayBackground(highlight);
+  profiler.endSection(profiler.BACKGROUND);
+
   // Refresh timers
   matchList.update();
   sessionBar.update();
+  profiler.endSection(profiler.UPDATE);
 
   // Display interface components
   matchList.display();
+  profiler.endSection(profiler.MATCH_LIST);
   controlPanel.display();
+  profiler.endSection(profiler.CONTROL_PANEL);
   sessionBar.display();
-}
+  profiler.endSection(profiler.SESSION_BAR);
 
-void keyPressed() {
-  if (key == ' ') {
-    matchList.playPause();
-  } else if (key == '+') {
-    matchList.advanceGame(1);
-  } else if (key == '_') {
-    matchList.advanceGame(-1);
-  } else if (key == 'C') {
-    matchList.toggleMiniButtons();
-  } else if (key == 'F') {
-    toggleFullScreen();
+  // Share latest state with public display and network subscribers
+  if (publicDisplay != null || broadcaster != null) {
+    DisplaySnapshot snapshot = new DisplaySnapshot(matchList, sessionBar, highlight, clock.nanoTime());
+    if (publicDisplay != null) {
+      publicDisplay.publish(snapshot);
+    }
+    if (broadcaster != null) {
+      broadcaster.publish(snapshot);
+    }
+  }
+  publishDrawnState();
+  profiler.endSection(profiler.PUBLISH);
+
+  // Show frame times over the top if asked to, then record whole frame
+  if (profiler.isVisible) {
+    profiler.display();
   }
+  profiler.endFrame();
 }
 
-void mousePressed() {
-  if (mouseY <= 150) {
+void handleClick(int clickX, int clickY) {
+  if (clickY <= 150) {
     // Get control panel to respond to mouse press
-    controlPanel.respond(mouseX, mouseY);
+    controlPanel.respond(clickX, clickY);
 
     // Start or stop session if necessary
     boolean newInSession = !controlPanel.isActive;
@@ -142,10 +337,67 @@ void mousePressed() {
     }
   } else {
     // Get match list to respond to mouse press 
-    matchList.respond(mouseX, mouseY);
+    matchList.respond(clickX, clickY);
   }
 }
 
+void handleKey(char pressed) {
+  if (pressed == ' ') {
+    matchList.playPause();
+  } else if (pressed == '+') {
+    matchList.advanceGame(1);
+  } else if (pressed == '_') {
+    matchList.advanceGame(-1);
+  } else if (pressed == 'C') {
+    matchList.toggleMiniButtons();
+  } else if (pressed == 'F') {
+    toggleFullScreen();
+  } else if (pressed == 'P') {
+    profiler.toggle();
+  }
+}
+
+void keyPressed(KeyEvent event) {
+  // Runs on the event thread, so leave the key for the next frame
+  inputs.add(event);
+  redraw();
+}
+
+void mousePressed(MouseEvent event) {
+  // Runs on the event thread, so leave the click for the next frame
+  inputs.add(event);
+  redraw();
+}
+
+void mouseMoved() {
+  // Update hover highlights straight away
+  pointerX = mouseX;
+  pointerY = mouseY;
+  checkForRedraw();
+}
+
+void checkForRedraw() {
+  // Requests a new frame only if part of the display would change
+  // Called from the redraw timer and on mouse movement, so only reads what draw() has published
+  HoverAreas areas = drawnAreas;
+  boolean isHoverChanged = areas != null && areas.areaAt(pointerX, pointerY) != drawnArea;
+  if (clock.nanoTime() >= nextChangeNanos || width != drawnWidth || height != drawnHeight || isHoverChanged) {
+    redraw();
+  }
+}
+
+String commandLineOption(String name) {
+  // Returns value of --name=value (or "" for just --name) given on the command line, or null if not given
+  for (int i = 0; args != null && i < args.length; i++) {
+    if (args[i].equals(name)) {
+      return "";
+    } else if (args[i].startsWith(name + "=")) {
+      return args[i].substring(name.length()+1);
+    }
+  }
+  return null;
+}
+
 String dayName() {
   // Returns full name of week day
   Calendar c = Calendar.getInstance();
@@ -167,6 +419,32 @@ void endSession() {
   // Trigger session end
   sessionBar.deactivate();
   matchList.deactivate();
+  journal.recordEnd();
+}
+
+void resumeSession() {
+  // Carries on a session left unfinished by a crash or restart, if there is one
+  if (!journal.replay()) {
+    return;
+  }
+  if (journal.endWallMillis <= clock.wallMillis()) {
+    // Session would have ended while program wasn't running
+    journal.recordEnd();
+    return;
+  }
+  Calendar end = Calendar.getInstance();
+  end.setTimeInMillis(journal.endWallMillis);
+  controlPanel.showSession(end.get(Calendar.HOUR_OF_DAY), end.get(Calendar.MINUTE), journal.nTeams, journal.nSim);
+  inSession = true;
+  Fixtures fixtures = fixtureLoader.rebuild(journal.nSim, journal.nTeams, journal.permutationSeed);
+  engine.start(fixtures, journal.nTeams, matchList.listLength, journal.endWallMillis, clock.wallMillis(), clock.nanoTime());
+  engine.resume(journal.game, journal.elapsedMillis * 1000000L);
+  sessionBar.activate();
+  matchList.activate(journal.nSim);
+  if (journal.isPlaying) {
+    matchList.startGame();
+  }
+  println("Resumed session at game " + journal.game);
 }
 
 void startSession() {
@@ -176,10 +454,60 @@ void startSession() {
   int nTeams = controlPanel.getNTeams();
   int nSim = controlPanel.getNSim();
 
-  // Initiate session
-  sessionBar.activate(endHour, endMin);
+  // Initiate session with new match list (usually prepared in background)
+  Fixtures fixtures = fixtureLoader.take(nSim, nTeams);
+  engine.start(fixtures, nTeams, matchList.listLength, sessionBar.endTimeFor(endHour, endMin), clock.wallMillis(), clock.nanoTime());
+  sessionBar.activate();
   matchList.activate(nSim);
-  matchList.reloadMatches(nTeams, nSim);
+  journal.recordStart(nSim, nTeams, fixtures.permutationSeed, engine.endWallMillis);
+}
+
+void publishDrawnState() {
+  // Shares what this frame showed with the threads which decide when to draw the next one
+  // A set of hover areas is replaced rather than changed once published, and only when it differs
+  spareAreas.clear();
+  controlPanel.addHoverAreas(spareAreas);
+  matchList.addHoverAreas(spareAreas);
+  if (!spareAreas.sameAs(drawnAreas)) {
+    drawnAreas = spareAreas;
+    spareAreas = new HoverAreas();
+  }
+  drawnArea = drawnAreas.areaAt(mouseX, mouseY);
+  drawnWidth = width;
+  drawnHeight = height;
+  long now = clock.nanoTime();
+  nextChangeNanos = Math.min(matchList.nextChangeAt(now), sessionBar.nextChangeAt(now));
+}
+
+int[] prefInts(Table prefs, int row, int[] fallback) {
+  // Returns whole numbers listed after the name in a row of prefs.csv, or fallback if the row is missing
+  if (row >= prefs.getRowCount()) {
+    return fallback;
+  }
+  int[] values = new int[0];
+  for (int col = 1; col < prefs.getColumnCount(); col++) {
+    String value = prefs.getString(row, col);
+    if (value != null && value.trim().length() > 0) {
+      values = append(values, int(value.trim()));
+    }
+  }
+  return values;
+}
+
+int maxSimFor(int nTeams) {
+  // Returns most games which can be played at once while giving every team a rest between games
+  // (3 teams for one game, 5 for two, 8 for three, and so on)
+  return max(1, (nTeams+1)/3);
+}
+
+int simFor(int nTeams, int[] thresholds) {
+  // Returns number of games to play at once, one more for each threshold (in increasing order) reached by nTeams
+  // Thresholds come from prefs.csv, so never go beyond the number which leaves everyone a rest
+  int nSim = 1;
+  while (nSim <= thresholds.length && nTeams >= thresholds[nSim-1]) {
+    nSim++;
+  }
+  return min(nSim, maxSimFor(nTeams));
 }
 
 boolean sketchFullScreen() {
@@ -23,7 +23,8 @@
 
 class IconButton {
   // Button which displays an icon instead of a string label.
-  // Icon should be a 48x48 pixel white/grayscale mask.
+  // Icon should be a 48x48 pixel white/grayscale mask, and is drawn as tall
+  // as the button.
 
   int xPos, yPos, xSize, ySize;
   boolean isActive, wasPressed, displayLabel;
@@ -43,9 +44,16 @@ class IconButton {
     wasPressed = false;
   }
 
-  void display() {
-    // Highlight background when hovered over
-    if (isActive && mouseX >= xPos && mouseX <= xPos+xSize && mouseY >= yPos && mouseY <= yPos+ySize) {
+  void addHoverAreas(HoverAreas areas, int yOffset) {
+    // Same box as isHovered(), moved down by yOffset into screen coordinates
+    if (isActive) {
+      areas.add(xPos, yPos+yOffset, xPos+xSize, yPos+ySize+yOffset);
+    }
+  }
+
+  void display(int pointerX, int pointerY) {
+    // Highlight background when hovered over (pointer given in same coordinates as button)
+    if (isHovered(pointerX, pointerY)) {
       //fill(activeColour, 150);
       fill(TIMER_AMBER, 200);
       rect(xPos, yPos, xSize, ySize);
@@ -53,7 +61,7 @@ class IconButton {
 
     // Draw icon
     tint(inactiveColour);
-    image(icon, xPos+xSize/2-23, yPos+ySize/2-23, 48, 48);
+    image(icon, xPos+xSize/2-ySize/2+1, yPos+1, ySize, ySize);
 
     // Draw border
     noFill();
@@ -63,6 +71,10 @@ class IconButton {
     noStroke();
   }
 
+  boolean isHovered(int pointerX, int pointerY) {
+    return isActive && pointerX >= xPos && pointerX <= xPos+xSize && pointerY >= yPos && pointerY <= yPos+ySize;
+  }
+
   void resizeTo(int newXPos, int newYPos, int newXSize, int newYSize) {
     xPos = newXPos;
     yPos = newYPos;
@@ -71,7 +83,7 @@ class IconButton {
   }
 
   void respond(int clickX, int clickY) {
-    if (isActive && clickX >= xPos && clickX <= xPos+xSize && clickY >= yPos && clickY <= yPos+ySize) {
+    if (isHovered(clickX, clickY)) {
       wasPressed = true;
     }
   }
@@ -0,0 +1,109 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class TeamLabel {
+  // Team numbers for one match as strings, with positions for them and the
+  // 'v' between them relative to the centre of the match, kerned so that
+  // the pair looks centred whatever the digits
+
+  final String left, right;
+  final int leftX, vX, rightX;
+
+  TeamLabel(int leftTeam, int rightTeam) {
+    left = str(leftTeam);
+    right = str(rightTeam);
+
+    // Optimise text centering
+    int shift = 0;
+    if (leftTeam%10 == 1) { 
+      shift -= 7;
+    }
+    if (leftTeam/10 == 1) {
+      shift -= 8;
+    }
+    if (rightTeam%10 == 1) {
+      shift += 8;
+    }
+    if (leftTeam < 10 && rightTeam/10 == 1) { 
+      shift -= 20;
+    } else if (leftTeam < 10 && rightTeam/10 > 1) { 
+      shift -= 25;
+    } 
+    if (leftTeam/10 == 1 && rightTeam/10 == 1) {
+      shift += 8;
+    }
+
+    // Kern '1v' and 'v1'
+    vX = shift+1;
+    leftX = shift - (leftTeam%10 == 1 ? 20 : 25);
+    rightX = shift + (rightTeam/10 == 1 ? 14 : 25);
+  }
+}
+
+class LabelCache {
+  // Hands out the same string objects for numbers and team pairings every
+  // time they are drawn, so that drawing a frame doesn't create any new
+  // strings once every label on screen has been seen. Numbers up to 99 are
+  // made up front; a team pairing is laid out the first time it is asked
+  // for. Anything larger is made afresh each time.
+
+  final int CACHED_NUMBERS = 100;
+
+  String[] numbers, twoDigits;
+  TeamLabel[] pairings;
+
+  LabelCache() {
+    numbers = new String[CACHED_NUMBERS];
+    twoDigits = new String[CACHED_NUMBERS];
+    for (int i = 0; i < CACHED_NUMBERS; i++) {
+      numbers[i] = str(i);
+      twoDigits[i] = String.format("%02d", i);
+    }
+    pairings = new TeamLabel[CACHED_NUMBERS*CACHED_NUMBERS];
+  }
+
+  boolean isCached(int n) {
+    return n >= 0 && n < CACHED_NUMBERS;
+  }
+
+  String number(int n) {
+    return isCached(n) ? numbers[n] : str(n);
+  }
+
+  TeamLabel teams(int leftTeam, int rightTeam) {
+    if (!isCached(leftTeam) || !isCached(rightTeam)) {
+      return new TeamLabel(leftTeam, rightTeam);
+    }
+    int index = leftTeam*CACHED_NUMBERS + rightTeam;
+    if (pairings[index] == null) {
+      pairings[index] = new TeamLabel(leftTeam, rightTeam);
+    }
+    return pairings[index];
+  }
+
+  String twoDigits(int n) {
+    // Zero-padded to at least two digits
+    return isCached(n) ? twoDigits[n] : String.format("%02d", n);
+  }
+}
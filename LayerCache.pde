@@ -0,0 +1,158 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class LayerCache {
+  // Holds pre-rendered images for the parts of the display which rarely change.
+  // Each layer is drawn once into an offscreen buffer and then copied to the
+  // screen with a single call to image() on every frame. With an OpenGL
+  // renderer, outlines which never change are also built once as retained
+  // shapes, so that their geometry stays on the graphics card. Cell sprites
+  // are only kept for the current cell size, as every cell is the same size.
+
+  PGraphics background;
+  color backgroundColour;
+  HashMap<String, PGraphics> cellSprites;
+  int spriteWidth, spriteHeight;
+
+  LayerCache() {
+    background = null;
+    cellSprites = new HashMap<String, PGraphics>();
+  }
+
+  void displayBackground(color highlight) {
+    // Rebuild texture only if highlight colour or window size has changed
+    if (background == null || background.width != width || background.height != height) {
+      background = createGraphics(width, height);
+      renderBackground(highlight);
+    } else if (highlight != backgroundColour) {
+      renderBackground(highlight);
+    }
+
+    noTint();
+    image(background, 0, 0);
+  }
+
+  void renderBackground(color highlight) {
+    // Draw textured background in the given colour
+    background.beginDraw();
+    background.noStroke();
+    background.background(highlight);
+    background.fill(lerpColor(highlight, TIMER_GREY, 0.1));
+    for (int i = 0; i < height; i++) {
+      if (int(i/3.0) % 2 == 1) {
+        background.rect(0, i, width, 1);
+      }
+    }
+    background.endDraw();
+
+    backgroundColour = highlight;
+  }
+
+  PGraphics getCellSprite(int xSize, int ySize, boolean isActive) {
+    // Returns gradient fill for a cell of the given size, rendering it on first use
+    // Sprites for any other size are left over from before the window was resized, so are let go
+    if (xSize != spriteWidth || ySize != spriteHeight) {
+      cellSprites.clear();
+      spriteWidth = xSize;
+      spriteHeight = ySize;
+    }
+    String key = xSize + "x" + ySize + (isActive ? "-active" : "-inactive");
+    PGraphics sprite = cellSprites.get(key);
+    if (sprite == null) {
+      sprite = createGraphics(xSize, ySize);
+      sprite.beginDraw();
+      sprite.noStroke();
+      for (int i = 0; i < ySize; i++) {
+        sprite.fill(map(i, 0, ySize, (isActive ? 200 : 60), (isActive ? 180 : 50)));
+        sprite.rect(0, i, xSize, 1);
+      }
+      sprite.endDraw();
+      cellSprites.put(key, sprite);
+    }
+    return sprite;
+  }
+
+  PShape renderCellFrame(int xSize, int ySize, int nMatches) {
+    // Returns outline of a cell and lines dividing its matches
+    PShape frame = startLines(color(0), 1.5);
+    addRect(frame, 0, 0, xSize, ySize);
+    for (int i = 1; i < nMatches; i++) {
+      addLine(frame, i*xSize/nMatches, layout.dividerTop, i*xSize/nMatches, ySize/2-layout.dividerGap);
+    }
+    frame.endShape();
+    return frame;
+  }
+
+  PShape renderSpinnerBox(color colour) {
+    // Returns box around a spinner's value and arrows, relative to its text position
+    PShape box = startLines(colour, 2);
+    addRect(box, -2, -17, 53, 20);
+    addLine(box, 37, -16, 37, 2);
+    addLine(box, 38, -7, 50, -7);
+    box.endShape();
+    return box;
+  }
+
+  PShape startLines(color colour, float weight) {
+    PShape lines = createShape();
+    lines.beginShape(LINES);
+    lines.noFill();
+    lines.stroke(colour);
+    lines.strokeWeight(weight);
+    return lines;
+  }
+
+  void addLine(PShape lines, float x1, float y1, float x2, float y2) {
+    lines.vertex(x1, y1);
+    lines.vertex(x2, y2);
+  }
+
+  void addRect(PShape lines, float x, float y, float w, float h) {
+    addLine(lines, x, y, x+w, y);
+    addLine(lines, x+w, y, x+w, y+h);
+    addLine(lines, x+w, y+h, x, y+h);
+    addLine(lines, x, y+h, x, y);
+  }
+
+  PGraphics renderShadow(int xSize, int ySize, int startAlpha, int alphaStep, int direction) {
+    // Returns a shadow which fades out towards the given direction (UP, DOWN, LEFT or RIGHT)
+    PGraphics shadow = createGraphics(xSize, ySize);
+    shadow.beginDraw();
+    shadow.noStroke();
+    int depth = (direction == UP || direction == DOWN) ? ySize : xSize;
+    for (int i = 0; i < depth; i++) {
+      shadow.fill(0, 0, 0, startAlpha-alphaStep*i);
+      if (direction == DOWN) {
+        shadow.rect(0, i, xSize, 1);
+      } else if (direction == UP) {
+        shadow.rect(0, ySize-1-i, xSize, 1);
+      } else if (direction == RIGHT) {
+        shadow.rect(i, 0, 1, ySize);
+      } else {
+        shadow.rect(xSize-1-i, 0, 1, ySize);
+      }
+    }
+    shadow.endDraw();
+    return shadow;
+  }
+}
@@ -0,0 +1,159 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class Layout {
+  // Works out where each part of the interface goes for the window size and
+  // number of games at once. This is only done again when one of those
+  // changes, never while drawing a frame. Cells are designed for a window
+  // of DESIGN_WIDTH by DESIGN_HEIGHT, and are scaled with the window from
+  // there, along with the 'now' line and the text in them. Text is set in
+  // the nearest shipped bitmap font at or above the size it is drawn at, so
+  // that it is only ever scaled down. Text bigger than the largest shipped
+  // font is made from the installed font at that size, or if the font isn't
+  // installed, stops growing at the largest shipped size. Cells are widened
+  // to fit every game across them, and team numbers are set in the largest
+  // size which still fits each game's share of the cell.
+
+  final int PANEL_HEIGHT = 150;
+  final int BAR_HEIGHT = 40;
+  final int PANEL_WIDTH = 1142;
+  final int DESIGN_WIDTH = 1000;
+  final int DESIGN_HEIGHT = 700;
+  final float MIN_SCALE = 0.5;
+  final int CELL_HEIGHT = 175;
+  final int NOW_LINE_OFFSET = 168;
+  final int MIN_CELL_WIDTH = 364;
+  final int MATCH_WIDTH = 300;
+  final int MIN_MARGIN = 40;
+  final int MAX_LINE_PADDING = 20;
+  final int[] FONT_SIZES = {
+    24, 48, 66
+  };
+  final int FONT_STEP = 12;
+  final int[] TEAM_FONT_SIZES = {
+    66, 48, 24
+  };
+  final int TEAM_LABEL_WIDTH = 230;
+
+  int layoutWidth, layoutHeight, nSim;
+  int panelOffset, panelButtonX;
+  int cellWidth, cellHeight, listLength, xStart, yStart, linePadding;
+  int dividerTop, dividerGap, cellInset, boxGap, boxRadius, teamBaseline;
+  int labelBaseline, gameLabelX, remainingLabelX, minutesX, colonX;
+  float cellScale, textScale, teamScale, teamSize, smallSize, largeSize;
+  PFont teamFont, smallFont, largeFont;
+
+  Layout(int w, int h, int nSim_) {
+    layoutWidth = -1;
+    update(w, h, nSim_);
+  }
+
+  PFont fontFor(float size) {
+    // Smallest shipped font at least as big as size, or else the installed font made a little bigger than size
+    for (int fontSize : FONT_SIZES) {
+      if (fontSize >= size) {
+        return assets.getFont(fontPath(fontSize));
+      }
+    }
+    PFont made = assets.getFont(fontPath(FONT_SIZES[FONT_SIZES.length-1]), FONT_STEP*ceil(size/FONT_STEP));
+    return made != null ? made : assets.getFont(fontPath(FONT_SIZES[FONT_SIZES.length-1]));
+  }
+
+  String fontPath(int size) {
+    return "fonts/SquarishSansCTRegular-" + size + ".vlw";
+  }
+
+  int scaled(int length) {
+    // Length in a cell at its design size, scaled to the cells' current size
+    return round(length*cellScale);
+  }
+
+  boolean update(int w, int h, int nSim_) {
+    // Lays out interface again if anything has changed, returning whether it has
+    if (w == layoutWidth && h == layoutHeight && nSim_ == nSim) {
+      return false;
+    }
+    layoutWidth = w;
+    layoutHeight = h;
+    nSim = nSim_;
+
+    // Control panel is centred once the window is wide enough
+    panelOffset = max(0, w/2-PANEL_WIDTH/2);
+    panelButtonX = w-1000 >= 40 ? w-116 : w-106;
+
+    // Cells grow with whichever of the window's width and height is relatively smaller
+    cellScale = max(MIN_SCALE, min(w/(float) DESIGN_WIDTH, h/(float) DESIGN_HEIGHT));
+
+    // Cells are wide enough for each game, but no wider than the window allows
+    cellWidth = constrain(scaled(MATCH_WIDTH)*nSim, scaled(MIN_CELL_WIDTH), max(scaled(MIN_CELL_WIDTH), w-2*MIN_MARGIN));
+    cellHeight = scaled(CELL_HEIGHT);
+    xStart = (w-cellWidth)/2;
+    linePadding = constrain(xStart/5, 4, scaled(MAX_LINE_PADDING));
+
+    // Previous game fills the list above the 'now' line, and enough cells follow it to reach the bar while scrolling
+    yStart = PANEL_HEIGHT + scaled(NOW_LINE_OFFSET);
+    listLength = ceil((h-BAR_HEIGHT-yStart)/(float) cellHeight) + 2;
+
+    // Offsets within a cell, so that drawing one needs no arithmetic beyond adding them to its position
+    dividerTop = scaled(35);
+    dividerGap = scaled(18);
+    cellInset = scaled(14);
+    boxGap = scaled(10);
+    boxRadius = scaled(10);
+    teamBaseline = scaled(70);
+    labelBaseline = scaled(50);
+    gameLabelX = scaled(15);
+    remainingLabelX = scaled(17);
+
+    // Text grows with the cells, unless it would outgrow the largest shipped font and there is no installed font to make a bigger one
+    int largestFont = FONT_SIZES[FONT_SIZES.length-1];
+    textScale = cellScale;
+    if (TEAM_FONT_SIZES[0]*cellScale > largestFont && !assets.isInstalled(fontPath(largestFont))) {
+      textScale = largestFont / (float) TEAM_FONT_SIZES[0];
+    }
+
+    // Minutes and colon are placed by the width of the seconds, which end at the cell's inset
+    minutesX = cellInset + round(131*textScale);
+    colonX = cellInset + round(92*textScale);
+
+    // Largest team size whose widest pairing fits within each game
+    int matchWidth = cellWidth/nSim;
+    teamSize = TEAM_FONT_SIZES[TEAM_FONT_SIZES.length-1]*textScale;
+    for (int size : TEAM_FONT_SIZES) {
+      if (TEAM_LABEL_WIDTH*size*textScale/TEAM_FONT_SIZES[0] <= matchWidth-2*cellInset) {
+        teamSize = size*textScale;
+        break;
+      }
+    }
+    teamFont = fontFor(teamSize);
+    teamScale = teamSize / TEAM_FONT_SIZES[0];
+
+    // Game number and time left
+    smallSize = 24*textScale;
+    smallFont = fontFor(smallSize);
+    largeSize = 48*textScale;
+    largeFont = fontFor(largeSize);
+    return true;
+  }
+}
@@ -22,102 +22,109 @@
 //
 
 class MatchList {
-  // Preset values
-  final int[] LINE_PADDINGS = {
-    20, 20, 16, 10
-  };
-  final int[] CELL_WIDTHS = {
-    364, 364, 600, 900
-  };
-  final int CELL_HEIGHT = 175;
-  final int LIST_HEIGHT = 700;
-
-  int cellWidth, cellHeight, linePadding, xStart, yStart, listLength, matchLength, currentGame;
-  int startMillis, millisElapsed, millisRemaining;
-  float progress;
-  boolean isActive, inGame;
-  Table matches;
+  int cellWidth, cellHeight, linePadding, xStart, yStart, listLength;
+  int millisRemaining, warningsPassed;
+  int drawnSecLeft, drawnOffset, scrollPixels, scrollSteps;
+  float progress, scroll;
+  boolean isLogging;
   Cell[] cells;
+  PImage leftShadow, rightShadow;
 
-  MatchList(int nSimGames_, int matchLength_) {
-    // Store match length from preferences
-    matchLength = matchLength_;
-
-    // Determine cell dimensions
-    cellWidth = CELL_WIDTHS[nSimGames_];
-    cellHeight = CELL_HEIGHT;
-    listLength = ceil((height-190.0)/CELL_HEIGHT) + 1;
-    linePadding = LINE_PADDINGS[nSimGames_];   
-    xStart = (width-cellWidth)/2;
-    yStart = (150+LIST_HEIGHT-40)/2 - cellHeight/2;
-
+  MatchList(int nSimGames_) {
     // Initialise
-    currentGame = 1;
-    isActive = false;
-    inGame = false;
-    millisRemaining = matchLength * 1000;
-
-    // Create and fill cells with blank data for now
-    matches = new Table();
-    cells = new Cell[listLength];
-    for (int i = 0; i < listLength; i++) {
-      cells[i] = new Cell(i, matches.getRow(i), xStart, yStart+(i-1)*cellHeight, cellWidth, cellHeight);
-    }
+    millisRemaining = engine.matchLength * 1000;
+    scrollSteps = 1;
+    isLogging = true;
+
+    // Create cells with blank data for now, sized for given number of games at once
+    cells = new Cell[0];
+    layout.update(width, height, nSimGames_);
+    applyLayout();
   }
 
   void activate(int nSimGames_) {
-    currentGame = 1;
-    isActive = true;
+    // Shows session which has just been started (or resumed) by the engine
 
     // Reset and reshape cells
-    cellWidth = CELL_WIDTHS[nSimGames_];
-    linePadding = LINE_PADDINGS[nSimGames_]; 
-    xStart = (width-cellWidth)/2;
+    layout.update(width, height, nSimGames_);
+    applyLayout();
     for (int i = 0; i < listLength; i++) {
       cells[i].isActive = false;
-      cells[i].setXPos(xStart);
-      cells[i].setWidth(cellWidth);
     }
 
-    // Highlight first match
+    // Highlight current match and fill in fixtures
     cells[1].isActive = true;
+    populateCells();
 
     // Initialise match clock
-    cells[1].setMinLeft(floor(matchLength/60));
-    cells[1].setSecLeft(matchLength % 60);
+    long now = clock.nanoTime();
+    setWarningsPassed(deadlines.warningsPassed(deadlines.gameWarnings, engine.gameClock.remainingAt(now)));
+    refreshClock(now);
+
+    // Report how list was made, so that it can be regenerated from the same seed (not for simulated or test sessions)
+    if (isLogging) {
+      Fixtures source = engine.matches.source;
+      String title = "Fixtures for " + engine.nTeams + " teams on " + source.nSim + " ice, permutation seed " + source.permutationSeed;
+      new FairnessReport(source, engine.nTeams).print(title);
+    }
+  }
+
+  void addHoverAreas(HoverAreas areas) {
+    // Only the active cell has buttons, drawn scrolled up with the rest of the list
+    cells[1].addHoverAreas(areas, -scrollPixels);
   }
 
+  void applyLayout() {
+    // Moves and resizes cells to fit current layout, adding or removing cells if list has changed length
+    cellWidth = layout.cellWidth;
+    cellHeight = layout.cellHeight;
+    linePadding = layout.linePadding;
+    xStart = layout.xStart;
+    yStart = layout.yStart;
+    if (listLength != layout.listLength) {
+      listLength = layout.listLength;
+      boolean miniButtons = cells.length > 0 && cells[0].miniButtons;
+      Cell[] oldCells = cells;
+      cells = new Cell[listLength];
+      for (int i = 0; i < listLength; i++) {
+        cells[i] = i < oldCells.length ? oldCells[i] : new Cell(i, new FixtureRow(), xStart, yStart+(i-1)*cellHeight, cellWidth, cellHeight);
+        cells[i].miniButtons = miniButtons;
+      }
+      if (engine.isActive) {
+        populateCells();
+      }
+    }
+    for (int i = 0; i < listLength; i++) {
+      cells[i].setXPos(xStart);
+      cells[i].setYPos(yStart+(i-1)*cellHeight);
+      cells[i].setWidth(cellWidth);
+      cells[i].setHeight(cellHeight);
+    }
+    leftShadow = null;
+  }
 
   void advanceGame(int step) {
-    inGame = false;
+    engine.advance(step);
+    deadlines.cancelGame();
 
     // Reset selected cell
     cells[1].isTicking = false;
     cells[1].updateButtons();
-    cells[1].setMinLeft(floor(matchLength/60));
-    cells[1].setSecLeft(matchLength % 60);
+    setWarningsPassed(0);
 
-    // Reset timing data
-    millisRemaining = matchLength * 1000;
-    millisElapsed = 0;
-    progress = 0.0;
-
-    // Realign cells with 'now' line
-    offsetCells(progress);
-
-    currentGame += step;
-    if (currentGame < 0) {
-      currentGame += 100;
-    }
+    // Reset clock and realign cells with 'now' line
+    refreshClock(clock.nanoTime());
     populateCells();
+    journal.recordAdvance(engine.currentGame);
   }
 
   void display() {
     // Draw 'now' line
-    if (isActive) {
-      // Blink line in last 10 seconds
+    if (engine.isActive) {
+      // Blink line after final warning
       int secLeft = floor(millisRemaining/1000.0);
-      if (secLeft <= 10 && (secLeft%60)%2 == 1) {
+      boolean isFinalWarning = warningsPassed > 0 && warningsPassed == deadlines.gameWarnings.length;
+      if (isFinalWarning && (secLeft%60)%2 == 1) {
         fill(100);
       } else {
         fill(200);
@@ -126,7 +133,7 @@ class MatchList {
       rect(xStart+cellWidth+linePadding, yStart-1, xStart-2*linePadding, 2);
 
       // Same for line shadow
-      if (secLeft <= 10 && (secLeft%60)%2 == 1) {
+      if (isFinalWarning && (secLeft%60)%2 == 1) {
         fill(0);
       } else {
         fill(100);
@@ -143,78 +150,85 @@ class MatchList {
       rect(xStart+cellWidth+linePadding, yStart+1, xStart-2*linePadding, 2);
     }
 
-    // Draw shadow
-    for (int i = 0; i < 6; i++) {
-      fill(0, 0, 0, 90-15*i);
-      rect(xStart+cellWidth+i, 150, 1, height-190);
-      rect(xStart-i, 150, 1, height-190);
+    // Draw shadow (rendered once per layout)
+    if (leftShadow == null) {
+      leftShadow = layerCache.renderShadow(6, height-190, 90, 15, LEFT);
+      rightShadow = layerCache.renderShadow(6, height-190, 90, 15, RIGHT);
     }
-
-    // Dsiplay cells
+    noTint();
+    image(leftShadow, xStart-5, 150);
+    image(rightShadow, xStart+cellWidth, 150);
+
+    // Display cells, scrolled together (to sub-pixel precision with OpenGL, as Java2D would resample every image)
+    // Cells stay where they started, so the pointer is moved into the list's coordinates instead
+    scrollSteps = g.isGL() ? 4 : 1;
+    pushMatrix();
+    translate(0, -round(scroll*scrollSteps)/(float) scrollSteps);
     for (int i = 0; i < listLength; i++) {
-      cells[i].display();
+      cells[i].display(mouseX, mouseY+scrollPixels);
     }
+    popMatrix();
+
+    // Remember what was drawn so that changes can be detected
+    drawnSecLeft = floor(millisRemaining/1000.0);
+    drawnOffset = round(progress*cellHeight*scrollSteps);
   }
 
   void deactivate() {
     // End game and tidy up
     advanceGame(1);
+    engine.end();
 
     // Clear cells
-    matches = new Table();
     for (int i = 0; i < listLength; i++) {
       cells[i].isActive = false;
       cells[i].isTicking = false;
-      cells[i].setFixture(matches.getRow(i));
+      cells[i].setFixture(engine.matches.window, -1);
     }
+  }
 
-    isActive = false;
+  void handle(TimerEvent event) {
+    // Reacts to game deadlines from the timer thread
+    if (event.kind == GAME_WARNING) {
+      setWarningsPassed(event.level);
+    } else if (event.kind == GAME_END) {
+      advanceGame(1);
+    }
   }
 
-  void offsetCells(float percentage) {
-    // Scrolls cells upwards as game progresses
-    for (int i = 0; i < listLength; i++) {
-      int offsetYPos = round(yStart+(i-1)*cellHeight-percentage*cellHeight);
-      cells[i].setYPos(offsetYPos);
+  long nextChangeAt(long now) {
+    // Returns time at which the list will next look different from what was just drawn, if nothing else happens
+    // The end of the game asks for a frame itself
+    Countdown gameClock = engine.gameClock;
+    if (!engine.isActive || !engine.inGame || gameClock.isOverAt(now)) {
+      return Long.MAX_VALUE;
     }
+
+    // Next second on the clock, or next scroll step (asked for a millisecond early, as progress is rounded to a float)
+    long elapsed = gameClock.elapsedAt(now);
+    long remaining = gameClock.remainingAt(now);
+    long nextSecond = now + remaining - drawnSecLeft*1000000000L + 1;
+    long nextStep = now + (long) ((drawnOffset+0.5) * gameClock.lengthNanos / (cellHeight*scrollSteps)) - elapsed - 1000000L;
+    return Math.min(nextSecond, nextStep);
   }
 
   void pauseGame() {
-    inGame = false;
+    long now = clock.nanoTime();
+    engine.pause(now);
+    deadlines.pauseGame();
+
+    // Any warning still queued is dropped with the rest of this run, so show warnings the clock has passed
+    setWarningsPassed(deadlines.warningsPassed(deadlines.gameWarnings, engine.gameClock.remainingAt(now)));
+    journal.recordPause(engine.gameClock.elapsedAt(now) / 1000000L);
     cells[1].isTicking = false;
     cells[1].updateButtons();
   }
   
-  Table permuteTableRows(Table inTable, int nSimGames) {
-    // Creates and returns a new table based on one read from a CSV file, but with its rows permuted by random amounts.
-    
-    // Note: This is not pretty! The Table class is horrible and passed by reference hence the fiddly order of operations here.
-    // Updating the whole program to work with arrays rather than Tables would be a good idea!
-    
-    // Copy first row as is (and create the necessary column structure)
-    Table outTable = new Table();
-    outTable.addRow();
-    for (int j = 0; j < nSimGames*2; j++) {
-      outTable.addColumn();
-      outTable.setInt(0, j, inTable.getInt(0, j));
-    }
-    
-    // Copy the remaining rows with random permutations
-    for (int i = 1; i < 50; i++) {
-      outTable.addRow();
-      int offset = 2*int(random(nSimGames));
-      for (int j = 0; j < nSimGames*2; j++) {
-        outTable.setInt(i, j, inTable.getInt(i, (j+offset)%(nSimGames*2)));
-      }
-    }
-    return outTable;
-  }
-
   void playPause() {
     // Interprets spacebar press
-    if (isActive) {
+    if (engine.isActive) {
       // Start or pause game
-      if (inGame) {
+      if (engine.inGame) {
         pauseGame();
       } else {
         startGame();
@@ -223,32 +237,34 @@ class MatchList {
   }
 
   void populateCells() {
-    // Fills cells with match data
+    // Fills cells with match data, leaving cells before first game empty
     for (int i = 0; i < listLength; i++) {
-      // Loop indeces round
-      int idx = (i+currentGame-2)%50 < 0 ? (i+currentGame-2)%50+50 : (i+currentGame-2)%50;
-      cells[i].setFixture(matches.getRow(idx));
-      cells[i].setGameNo(i+currentGame-1);
+      int game = i+engine.currentGame-1;
+      cells[i].setFixture(engine.matches.window, engine.matches.rowFor(game));
+      cells[i].setGameNo(game);
     }
   }
 
-  void reloadMatches(int numTeams, int numSimGames) {
-    // Loads new match list from file and repopulates cells
-    String fixtureFile = "nsim-nteams/" + numSimGames + "-" + numTeams + ".csv";
-    Table tempTable = loadTable(fixtureFile);
-    matches = permuteTableRows(tempTable, numSimGames);
-    populateCells();
+  void refreshClock(long now) {
+    // Updates clock display and scroll position from game clock
+    progress = engine.gameClock.progressAt(now);
+    millisRemaining = (int) (engine.gameClock.remainingAt(now) / 1000000L);
+    int minRemaining = floor(millisRemaining/(60.0*1000.0));
+    int secRemaining = floor(millisRemaining/1000.0) % 60;
+    cells[1].setMinLeft(minRemaining);
+    cells[1].setSecLeft(secRemaining);
+    setScroll(progress);
   }
 
   void respond(int clickX, int clickY) {
     // Passes click to active cell and reacts
-    if (isActive) {
+    if (engine.isActive) {
       // Only central cell is active so don't need to check others
-      cells[1].respond(clickX, clickY);
+      cells[1].respond(clickX, clickY+scrollPixels);
       if (cells[1].playPressed) {
         cells[1].playPressed = false;
         // Start or pause game
-        if (inGame) {
+        if (engine.inGame) {
           pauseGame();
         } else {
           startGame();
@@ -261,21 +277,27 @@ class MatchList {
     }
   }
 
+  void setScroll(float percentage) {
+    // Scrolls cells upwards as game progresses
+    // Pointer is only offset by whole pixels, so buttons are hit where they appear to within half a pixel
+    scroll = percentage*cellHeight;
+    scrollPixels = round(scroll);
+  }
+
+  void setWarningsPassed(int passed) {
+    warningsPassed = passed;
+    cells[1].setWarnings(passed, deadlines.gameWarnings.length);
+  }
+
   void startGame() {
-    inGame = true;
     cells[1].isTicking = true;
     cells[1].updateButtons();
 
-    if (millisElapsed > 0) {
-      // Resume current game
-      startMillis = millis() - millisElapsed;
-    } else {
-      // Begin new game
-      startMillis = millis();
-      progress = 0.0;
-      millisElapsed = 0;
-      millisRemaining = matchLength * 1000;
-    }
+    // Begin new game or resume current one, and schedule its warnings and end
+    long now = clock.nanoTime();
+    journal.recordPlay(engine.gameClock.elapsedAt(now) / 1000000L);
+    engine.play(now);
+    setWarningsPassed(deadlines.scheduleGame(engine.gameClock, now));
   }
 
   void toggleMiniButtons() {
@@ -288,28 +310,10 @@ class MatchList {
   }
 
   void update() {
-    // Update match timer during game
-    if (isActive && inGame && millisRemaining > 0) {
-      millisElapsed = millis() - startMillis;
-      progress = (1.0 * millisElapsed) / (matchLength * 1000.0);
-
-      // Calculate remaining play time
-      millisRemaining = (matchLength * 1000) - millisElapsed;
-      if (millisRemaining < 0) {
-        millisRemaining = 0;
-      }
-
-      // Update clock display
-      int minRemaining = floor(millisRemaining/(60.0*1000.0));
-      int secRemaining = floor(millisRemaining/1000.0) % 60;
-      cells[1].setMinLeft(minRemaining);
-      cells[1].setSecLeft(secRemaining);
-
-      // Scroll cells upwards
-      offsetCells(progress);
-    } else if (isActive && inGame) {
-      // End game
-      advanceGame(1);
+    // Update match timer and scroll cells upwards during game
+    long now = clock.nanoTime();
+    if (engine.isActive && engine.inGame && !engine.gameClock.isOverAt(now)) {
+      refreshClock(now);
     }
   }
 }
@@ -0,0 +1,69 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class NullGraphics extends PGraphics {
+  // Renderer which keeps track of style and transforms like any other, but
+  // never puts anything on screen. Drawing code run against it does all of
+  // its own work and none of the renderer's, so the self test can check
+  // that the display code itself allocates nothing once warmed up. Java2D
+  // allocates on every frame whatever the sketch does. Measured per call:
+  // fill(), stroke() and tint() make a new java.awt.Color (32 B),
+  // strokeWeight() a new BasicStroke (40 B), a rounded rectangle a new
+  // GeneralPath (280 B), ellipse() and line() their path iterators (56 B
+  // and 24 B), pushMatrix() a copy of the transform (72 B with translate()
+  // and popMatrix()), and text() about 290 B per character for the glyph's
+  // transform. Plain rectangles and images allocate nothing.
+
+  NullGraphics(int w, int h) {
+    setPrimary(false);
+    setSize(w, h);
+  }
+
+  protected void ellipseImpl(float x, float y, float w, float h) {
+  }
+
+  protected void imageImpl(PImage image, float x1, float y1, float x2, float y2, int u1, int v1, int u2, int v2) {
+  }
+
+  public void line(float x1, float y1, float x2, float y2) {
+  }
+
+  protected void rectImpl(float x1, float y1, float x2, float y2) {
+  }
+
+  protected void rectImpl(float x1, float y1, float x2, float y2, float tl, float tr, float br, float bl) {
+  }
+
+  public void popMatrix() {
+  }
+
+  public void pushMatrix() {
+  }
+
+  public void scale(float s) {
+  }
+
+  public void translate(float x, float y) {
+  }
+}
@@ -0,0 +1,184 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class DisplaySnapshot {
+  // Copy of everything the public display shows, taken on the operator's
+  // animation thread and never changed afterwards. Clock times are stored
+  // along with the moment they were taken, so that a running clock can be
+  // worked out again at any later time without a new snapshot.
+
+  final int UPCOMING = 3;
+
+  final color highlight;
+  final boolean isActive, inGame, inSession;
+  final int currentGame, nSim, warningsPassed, nWarnings;
+  final int[][] games;
+  final long takenNanos, gameRemainingNanos, sessionRemainingNanos, sessionLengthNanos;
+
+  DisplaySnapshot(MatchList list, SessionBar bar, color highlight_, long now) {
+    highlight = highlight_;
+    takenNanos = now;
+
+    // Current game and clock
+    isActive = engine.isActive;
+    inGame = engine.inGame;
+    currentGame = engine.currentGame;
+    nSim = engine.matches.window.nSim;
+    warningsPassed = list.warningsPassed;
+    nWarnings = deadlines.gameWarnings.length;
+    gameRemainingNanos = engine.gameClock.remainingAt(now);
+
+    // Teams for current game and those coming up, where known
+    games = new int[isActive ? UPCOMING+1 : 0][];
+    for (int i = 0; i < games.length; i++) {
+      int row = engine.matches.rowFor(currentGame+i);
+      games[i] = new int[row < 0 ? 0 : 2*nSim];
+      for (int j = 0; j < games[i].length; j++) {
+        games[i][j] = engine.matches.window.getTeam(row, j);
+      }
+    }
+
+    // Session clock
+    inSession = bar.isActive;
+    sessionRemainingNanos = engine.sessionClock.remainingAt(now);
+    sessionLengthNanos = engine.sessionClock.lengthNanos;
+  }
+
+  long gameRemainingAt(long now) {
+    return inGame ? Math.max(0, gameRemainingNanos-(now-takenNanos)) : gameRemainingNanos;
+  }
+
+  long sessionRemainingAt(long now) {
+    return inSession ? Math.max(0, sessionRemainingNanos-(now-takenNanos)) : 0;
+  }
+}
+
+class PublicDisplay extends PApplet {
+  // Second window for a big screen that players can see, showing the game
+  // clock, the current and upcoming fixtures and the session clock, but none
+  // of the controls. It has its own animation thread and only ever reads the
+  // latest snapshot published by the operator's window, so neither window
+  // can hold the other up. Clocks are kept running from the snapshot even
+  // when the operator's window isn't drawing.
+
+  int screen;
+  PFont smallFont, mediumFont, largeFont;
+  AtomicReference<DisplaySnapshot> latest;
+
+  PublicDisplay(int screen_, PFont smallFont_, PFont mediumFont_, PFont largeFont_) {
+    screen = screen_;
+    smallFont = smallFont_;
+    mediumFont = mediumFont_;
+    largeFont = largeFont_;
+    latest = new AtomicReference<DisplaySnapshot>();
+  }
+
+  public void draw() {
+    DisplaySnapshot snapshot = latest.get();
+    if (snapshot == null) {
+      background(TIMER_GREY);
+      return;
+    }
+    long now = clock.nanoTime();
+    background(snapshot.highlight);
+
+    // Game clock
+    long remaining = snapshot.gameRemainingAt(now);
+    int secLeft = (int) (remaining / 1000000000L);
+    fill(255);
+    textAlign(CENTER);
+    textFont(largeFont, height/6);
+    String clock = snapshot.isActive ? String.format("%d:%02d", secLeft/60, secLeft%60) : "--:--";
+    text(clock, width/2, height/5);
+    textFont(mediumFont, height/20);
+    text(snapshot.isActive ? "Game " + snapshot.currentGame : "Waiting for session to start", width/2, height/5 + height/14);
+
+    // Fixtures, current game largest and flashing after warnings
+    int rowHeight = (height*9/20) / max(1, snapshot.games.length);
+    for (int i = 0; i < snapshot.games.length; i++) {
+      int[] teams = snapshot.games[i];
+      int yPos = height*2/5 + i*rowHeight;
+      if (i == 0 && snapshot.warningsPassed > 0 && secLeft%2 == 1) {
+        fill(snapshot.warningsPassed < snapshot.nWarnings ? TIMER_AMBER : TIMER_RED);
+        rect(0, yPos, width, rowHeight);
+      }
+      // Text is also kept narrow enough for each game's column
+      fill(i == 0 ? 255 : 200);
+      int columnWidth = 2*width / max(2, teams.length);
+      textFont(i == 0 ? largeFont : mediumFont, min(i == 0 ? rowHeight*3/5 : rowHeight/2, columnWidth/5));
+      for (int j = 0; j < teams.length/2; j++) {
+        int xCentre = (2*j+1) * width / teams.length;
+        text(teams[2*j] + " v " + teams[2*j+1], xCentre, yPos + rowHeight*7/10);
+      }
+    }
+
+    // Session clock and progress bar, as in SessionBar
+    long sessionLeft = snapshot.sessionRemainingAt(now);
+    int millisLeft = (int) (sessionLeft / 1000000L);
+    int hours = floor(millisLeft / (1000.0*60.0*60.0));
+    int mins = ceil((millisLeft - hours*1000.0*60.0*60.0) / (1000.0*60.0));
+    fill(0);
+    rect(0, height-60, width, 60);
+    fill(snapshot.highlight);
+    textFont(smallFont, 36);
+    textAlign(LEFT);
+    text("Session", 15, height-18);
+    textAlign(RIGHT);
+    text(String.format("%02d:%02d", hours, mins), width-15, height-18);
+    float progress = snapshot.sessionLengthNanos > 0 ? 1 - (float) sessionLeft / snapshot.sessionLengthNanos : 0;
+    rect(180, height-30, width-340, 3);
+    fill(TIMER_GREY);
+    rect(180, height-30, (width-340)*progress, 3);
+  }
+
+  public void exit() {
+    // Closing this window shouldn't quit the whole program
+    noLoop();
+    frame.dispose();
+  }
+
+  void publish(DisplaySnapshot snapshot) {
+    // Called from the operator's animation thread
+    latest.set(snapshot);
+  }
+
+  public void setup() {
+    size(displayWidth, displayHeight);
+    noStroke();
+    frameRate(30);
+    frame.setTitle("IceTimer");
+  }
+
+  public boolean sketchFullScreen() {
+    return true;
+  }
+
+  void start(String title) {
+    // Opens full screen on the chosen screen (1 for the main one)
+    PApplet.runSketch(new String[] {
+      ARGS_DISPLAY + "=" + screen, ARGS_FULL_SCREEN, title
+    }
+    , this);
+  }
+}
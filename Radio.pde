@@ -25,8 +25,14 @@ class Radio {
   final int DEACTIVATED = 0;
   final int DESELECTED = 1;
   final int SELECTED = 2;
-
-  int xPos, yPos, value, nOptions;
+  final int ROWS = 3;
+  final int ROW_HEIGHT = 29;
+  final int COLUMN_WIDTH = 160;
+  final int OPTION_WIDTH = 156;
+  final int TALL_HEIGHT = 86;
+
+  int xPos, yPos, value, nOptions, rows, firstY;
+  float pitch, scale;
   int[] states;
   String[] options;
   boolean isActive, changeMade;
@@ -57,7 +63,17 @@ class Radio {
     isActive = true;
     changeMade = false;
 
-    radioFont = loadFont("fonts/SquarishSansCTRegular-24.vlw");
+    radioFont = assets.getFont("fonts/SquarishSansCTRegular-24.vlw");
+    setRows(ROWS);
+  }
+
+  void addHoverAreas(HoverAreas areas) {
+    // Same boxes as hoveredOption()
+    for (int i = 0; i < nOptions; i++) {
+      if (isActive && states[i] != DEACTIVATED) {
+        areas.add(optionX(i)-round(12*scale), optionY(i)-round(18*scale), optionX(i)+round(144*scale), optionY(i)+round(11*scale)-1);
+      }
+    }
   }
 
   void disableOption(int index) {
@@ -69,8 +85,9 @@ class Radio {
   }
 
   void display() {
+    int hovered = hoveredOption(mouseX, mouseY);
     textAlign(LEFT);
-    textFont(radioFont);
+    textFont(radioFont, 24*scale);
     for (int i = 0; i < nOptions; i++) {
       // Draw text labels
       if (states[i] == DEACTIVATED || !isActive) {
@@ -78,17 +95,17 @@ class Radio {
       } else {
         fill(activeColour);
       }
-      text(options[i], xPos+19, yPos + i*29);
+      text(options[i], optionX(i)+19*scale, optionY(i));
 
       // Draw option circles
       noFill();
       strokeWeight(2);
-      if (isActive && states[i] != DEACTIVATED && mouseX >= xPos-12 && mouseX <= xPos+144 && mouseY >= (yPos-18+i*29) && mouseY < (yPos+11+i*29)) {
+      if (i == hovered) {
         stroke(activeColour);
       } else {
         stroke(inactiveColour);
       }
-      ellipse(xPos, yPos-7 + i*29, 14, 14);
+      ellipse(optionX(i), optionY(i)-7*scale, 14*scale, 14*scale);
 
       // Fill and highlight selected circle     
       if (states[i] == SELECTED) {
@@ -99,7 +116,7 @@ class Radio {
           fill(inactiveColour);
           stroke(inactiveColour);
         }
-        ellipse(xPos, yPos-7 + i*29, 14, 14);
+        ellipse(optionX(i), optionY(i)-7*scale, 14*scale, 14*scale);
       }
       noStroke();
     }
@@ -121,23 +138,71 @@ class Radio {
     }
   }
 
+  void fitWidth(int maxWidth) {
+    // Uses the fewest rows (but at least ROWS) whose columns fit within the given width
+    // Past ROWS, rows use more of the panel's height, and options shrink once they get closer together
+    for (int tryRows = ROWS; tryRows <= nOptions; tryRows++) {
+      setRows(tryRows);
+      if (getWidth() <= maxWidth) {
+        return;
+      }
+    }
+  }
+
   int getSelectedIndex() {
     return value;
   }
 
-  void respond(int clickX, int clickY) {
+  int getWidth() {
+    // Width taken up by options, from the left of the first column's circles to the right of the last column's labels
+    int columns = (nOptions+rows-1)/rows;
+    return round(((columns-1)*COLUMN_WIDTH + OPTION_WIDTH) * scale);
+  }
+
+  int hoveredOption(int pointerX, int pointerY) {
+    // Returns index of selectable option under pointer, or -1 if there is none
     for (int i = 0; i < nOptions; i++) {
-      if (isActive && states[i] != DEACTIVATED && clickX >= xPos-12 && clickX <= xPos+144 && clickY >= (yPos-18+i*29) && clickY < (yPos+11+i*29)) {
-        // If a selectable option is clicked, select it
-        setSelected(i);
+      if (isActive && states[i] != DEACTIVATED && pointerX >= optionX(i)-round(12*scale) && pointerX <= optionX(i)+round(144*scale) && pointerY >= optionY(i)-round(18*scale) && pointerY < optionY(i)+round(11*scale)) {
+        return i;
       }
     }
+    return -1;
+  }
+
+  int optionX(int index) {
+    // Options fill columns from left to right
+    return xPos + round((index/rows)*COLUMN_WIDTH*scale);
+  }
+
+  int optionY(int index) {
+    return firstY + round((index%rows)*pitch);
+  }
+
+  void respond(int clickX, int clickY) {
+    // If a selectable option is clicked, select it
+    int clicked = hoveredOption(clickX, clickY);
+    if (clicked >= 0) {
+      setSelected(clicked);
+    }
   }
 
   void setActiveColour(color newColour) {
     activeColour = newColour;
   }
 
+  void setRows(int newRows) {
+    // Up to ROWS rows sit at their usual spacing below yPos, more are spread over TALL_HEIGHT starting a little higher
+    rows = newRows;
+    if (rows <= ROWS) {
+      firstY = yPos;
+      pitch = ROW_HEIGHT;
+    } else {
+      firstY = yPos + ROW_HEIGHT*(ROWS-1)/2 - TALL_HEIGHT/2;
+      pitch = min(ROW_HEIGHT, TALL_HEIGHT/(float) (rows-1));
+    }
+    scale = pitch/ROW_HEIGHT;
+  }
+
   void setSelected(int newValueIndex) {
     //Act only if new option can be selected
     if (states[newValueIndex] == DESELECTED) {
@@ -0,0 +1,598 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+class SelfTest {
+  // Checks behaviour which is hard to see by watching the timer, such as
+  // clocks which mustn't drift (on a virtual clock, so without waiting),
+  // whole simulated evenings, fixture searches, late sound cues, network
+  // viewers who stop reading and drawing code which allocates. Run with
+  // --selftest. Each failed check is printed, and the program exits
+  // with status 1 if there were any, so that the checks can be run from a
+  // script.
+
+  final long SECOND = 1000000000L;
+  final int WARMUP_CALLS = 1000;
+  final int MEASURED_CALLS = 1000;
+  final int CUES = 30;
+  final long CUE_SPACING = 20000000L;
+  final long MAX_CUE_LATENCY = 20000000L;
+
+  int nChecks, nFailures;
+
+  SelfTest() {
+    nChecks = 0;
+    nFailures = 0;
+  }
+
+  int broadcastSubscribers(final Broadcaster broadcaster) throws Exception {
+    return broadcastSubscriberList(broadcaster).size();
+  }
+
+  ArrayList<Subscriber> broadcastSubscriberList(final Broadcaster broadcaster) throws Exception {
+    // Subscriber list belongs to the broadcaster's ticker, so copy it there
+    return broadcaster.ticker.submit(new Callable<ArrayList<Subscriber>>() {
+      public ArrayList<Subscriber> call() {
+        return new ArrayList<Subscriber>(broadcaster.subscribers);
+      }
+    }).get();
+  }
+
+  long broadcastTick(final Broadcaster broadcaster) throws Exception {
+    // Runs a tick on the broadcaster's ticker straight away, returning how long it took
+    long start = System.nanoTime();
+    broadcaster.ticker.submit(new Runnable() {
+      public void run() {
+        broadcaster.tick();
+      }
+    }).get();
+    return System.nanoTime() - start;
+  }
+
+  void check(boolean passed, String description) {
+    nChecks++;
+    if (!passed) {
+      nFailures++;
+      println("FAILED: " + description);
+    }
+  }
+
+  int polledKind(DeadlineTimer timer) {
+    // Kind of next event handed out, or -1 if there is none
+    TimerEvent event = timer.poll();
+    return event != null ? event.kind : -1;
+  }
+
+  boolean runAll() {
+    // Returns true if every check passed
+    testCountdownDrift();
+    testEngineDrift();
+    testCueLatency();
+    testEventsPolledLate();
+    testFixtureBundle();
+    testFixtureLimits();
+    testFixtureSearch();
+    testSimulation();
+    testBroadcasterStalledSubscriber();
+    testDisplayAllocations();
+    testCellSprites();
+    println(String.format("%d checks, %d failed", nChecks, nFailures));
+    return nFailures == 0;
+  }
+
+  void testBroadcasterStalledSubscriber() {
+    // A viewer who never reads mustn't hold up anyone else, and is dropped once they fall behind
+    // Broadcast state comes from the engine, so use one of our own
+    SavedGlobals saved = new SavedGlobals();
+    engine = new SessionEngine(180);
+    engine.start(fixtureLoader.rebuild(2, 10, 1), 10, 2, clock.wallMillis() + 3600000L, clock.wallMillis(), clock.nanoTime());
+    Broadcaster broadcaster = null;
+    Socket stalled = null;
+    Socket reading = null;
+    try {
+      ServerSocket probe = new ServerSocket(0);
+      int port = probe.getLocalPort();
+      probe.close();
+      broadcaster = new Broadcaster(port);
+      check(broadcaster.start(), "broadcaster starts on port " + port);
+      broadcaster.publish(new DisplaySnapshot(matchList, sessionBar, highlight, clock.nanoTime()));
+
+      // One viewer asks for events and never reads them, with as little buffering as it can get
+      byte[] request = "GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes();
+      stalled = new Socket();
+      stalled.setReceiveBufferSize(1024);
+      stalled.connect(new InetSocketAddress("localhost", port));
+      stalled.getOutputStream().write(request);
+
+      // Another reads everything, counting changes as they arrive
+      reading = new Socket("localhost", port);
+      reading.getOutputStream().write(request);
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(reading.getInputStream()));
+      final Semaphore deltas = new Semaphore(0);
+      Thread readerThread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+              if (line.equals("event: delta")) {
+                deltas.release();
+              }
+            }
+          } catch (IOException e) {
+            // Test is over
+          }
+        }
+      }, "Self test viewer");
+      readerThread.setDaemon(true);
+      readerThread.start();
+      for (int wait = 0; wait < 50 && broadcastSubscribers(broadcaster) < 2; wait++) {
+        Thread.sleep(100);
+      }
+      check(broadcastSubscribers(broadcaster) == 2, "both viewers subscribed");
+      ArrayList<Subscriber> bothViewers = broadcastSubscriberList(broadcaster);
+
+      // Move on a game every tick until the stalled viewer is dropped, as long as the reader keeps up
+      long slowestTick = 0;
+      boolean isReaderUpToDate = true;
+      int changes = 0;
+      while (changes < 200000 && isReaderUpToDate && (changes%100 != 0 || broadcastSubscribers(broadcaster) == 2)) {
+        engine.advance(1);
+        broadcaster.publish(new DisplaySnapshot(matchList, sessionBar, highlight, clock.nanoTime()));
+        slowestTick = Math.max(slowestTick, broadcastTick(broadcaster));
+        changes++;
+        isReaderUpToDate = deltas.tryAcquire(1, TimeUnit.SECONDS);
+      }
+      check(isReaderUpToDate, "reading viewer received all " + changes + " changes");
+      check(broadcastSubscribers(broadcaster) == 1, "stalled viewer dropped after " + changes + " changes");
+      check(slowestTick < broadcaster.TICK_MILLIS*1000000L, "slowest tick took " + slowestTick/1000 + " us");
+      bothViewers.removeAll(broadcastSubscriberList(broadcaster));
+      check(bothViewers.size() == 1 && bothViewers.get(0).socket.isClosed(), "stalled viewer's connection closed when they were dropped");
+
+      // Viewers share the writers rather than each having a thread
+      Socket[] crowd = new Socket[20];
+      for (int i = 0; i < crowd.length; i++) {
+        crowd[i] = new Socket("localhost", port);
+        crowd[i].getOutputStream().write(request);
+      }
+      for (int wait = 0; wait < 50 && broadcastSubscribers(broadcaster) < 1+crowd.length; wait++) {
+        Thread.sleep(100);
+      }
+      int writerThreads = 0;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        writerThreads += thread.getName().equals("Broadcast writer") ? 1 : 0;
+      }
+      check(broadcastSubscribers(broadcaster) == 1+crowd.length, "crowd of " + crowd.length + " viewers subscribed");
+      check(writerThreads <= broadcaster.WRITERS, writerThreads + " writer threads for " + (1+crowd.length) + " viewers");
+      for (Socket viewer : crowd) {
+        viewer.close();
+      }
+
+      // A tick which throws mustn't stop later ticks on the ticker's own schedule
+      broadcaster.publish(new DisplaySnapshot(matchList, sessionBar, highlight, clock.nanoTime()) {
+        long gameRemainingAt(long now) {
+          throw new IllegalStateException("snapshot broken on purpose");
+        }
+      });
+      Thread.sleep(3*broadcaster.TICK_MILLIS);
+      engine.advance(1);
+      broadcaster.publish(new DisplaySnapshot(matchList, sessionBar, highlight, clock.nanoTime()));
+      check(deltas.tryAcquire(1, 4*broadcaster.TICK_MILLIS, TimeUnit.MILLISECONDS), "broadcaster still ticking after an error");
+    } catch (Exception e) {
+      check(false, "broadcaster test threw " + e);
+    } finally {
+      try {
+        if (stalled != null) {
+          stalled.close();
+        }
+        if (reading != null) {
+          reading.close();
+        }
+      } catch (IOException e) {
+        // Already closed
+      }
+      if (broadcaster != null) {
+        broadcaster.stop();
+      }
+      saved.restore();
+    }
+  }
+
+  void testCellSprites() {
+    // Dragging the window through many sizes leaves only the current size's sprites behind
+    LayerCache cache = new LayerCache();
+    for (int size = 100; size < 120; size++) {
+      cache.getCellSprite(3*size, size, true);
+      cache.getCellSprite(3*size, size, false);
+    }
+    check(cache.cellSprites.size() == 2, cache.cellSprites.size() + " cell sprites kept after resizing");
+  }
+
+  void testCueLatency() {
+    // Cues sound soon after their deadlines, through a sink which notes when each one arrives
+    RecordingSink sink = new RecordingSink();
+    AudioCues cues = new AudioCues(false, 2);
+    cues.sink = sink;
+    DeadlineTimer timer = new DeadlineTimer(new int[0], new int[0], cues);
+    try {
+      long start = clock.nanoTime();
+      for (int i = 1; i <= CUES; i++) {
+        timer.post(i%3 == 0 ? GAME_END : GAME_WARNING, 1 + i%2, timer.gameGeneration, timer.gameRun, start + i*CUE_SPACING, timer.gameTasks);
+      }
+      long latest = 0;
+      boolean isRightClip = true;
+      for (int i = 1; i <= CUES; i++) {
+        Long played = sink.times.poll(1, TimeUnit.SECONDS);
+        if (played == null) {
+          check(false, "cue " + i + " of " + CUES + " played");
+          return;
+        }
+        latest = Math.max(latest, played - (start + i*CUE_SPACING));
+        isRightClip &= sink.clips.poll() == (i%3 == 0 ? cues.endClip : cues.warningClips[i%2]);
+      }
+      check(latest < MAX_CUE_LATENCY, "latest cue sounded " + latest/1000 + " us after its deadline");
+      check(isRightClip, "each cue played its own clip");
+
+      // Deadlines which fire just after their game is cancelled or paused stay quiet
+      int cancelledGeneration = timer.gameGeneration;
+      timer.cancelGame();
+      timer.post(GAME_END, 0, cancelledGeneration, timer.gameRun, clock.nanoTime(), timer.gameTasks);
+      int pausedRun = timer.gameRun;
+      timer.pauseGame();
+      timer.post(GAME_WARNING, 1, timer.gameGeneration, pausedRun, clock.nanoTime(), timer.gameTasks);
+      check(sink.times.poll(200, TimeUnit.MILLISECONDS) == null, "no cue after game is cancelled or paused");
+      check(timer.poll() == null, "no event after game is cancelled or paused");
+    } catch (InterruptedException e) {
+      check(false, "cue test interrupted");
+    } finally {
+      timer.timer.shutdownNow();
+    }
+  }
+
+  void testCountdownDrift() {
+    // Pausing and resuming at odd moments must neither gain nor lose time, however often the clock is read
+    VirtualClock virtual = new VirtualClock(0);
+    Random random = new Random(1);
+    Countdown countdown = new Countdown(180*SECOND);
+    long played = 0;
+    countdown.start(virtual.nanoTime());
+    while (played < countdown.lengthNanos) {
+      long running = 1 + random.nextInt(700000000);
+      for (int reads = random.nextInt(5); reads > 0; reads--) {
+        long step = running / (reads+1);
+        virtual.advance(step);
+        running -= step;
+        played += step;
+        long expected = Math.max(0, countdown.lengthNanos - played);
+        check(countdown.remainingAt(virtual.nanoTime()) == expected, "countdown running at " + played + " ns played");
+      }
+      virtual.advance(running);
+      played += running;
+      countdown.pause(virtual.nanoTime());
+      long expected = Math.max(0, countdown.lengthNanos - played);
+      check(countdown.remainingAt(virtual.nanoTime()) == expected, "countdown paused after " + played + " ns played");
+
+      // Time spent paused doesn't count
+      virtual.advance(random.nextInt(30) * SECOND);
+      check(countdown.remainingAt(virtual.nanoTime()) == expected, "countdown still paused after " + played + " ns played");
+      countdown.start(virtual.nanoTime());
+    }
+    check(countdown.isOverAt(virtual.nanoTime()), "countdown over after its whole length has been played");
+    check(countdown.remainingAt(virtual.nanoTime() + 60*SECOND) == 0, "countdown stays at zero");
+  }
+
+  void testEventsPolledLate() {
+    // Events stay queued until handled, however late that is, unless their game is paused or cancelled or their session replaced
+    DeadlineTimer timer = new DeadlineTimer(new int[] {
+      60
+    }, new int[] {
+      10
+    }, new AudioCues(false, 1));
+    timer.isLogging = false;
+    try {
+      int[] kinds = {
+        GAME_WARNING, GAME_END, SESSION_WARNING, SESSION_END
+      };
+      for (int kind : kinds) {
+        boolean isGame = kind == GAME_WARNING || kind == GAME_END;
+        timer.events.add(new TimerEvent(kind, 1, isGame ? timer.gameGeneration : timer.sessionGeneration, isGame ? timer.gameRun : 0, clock.nanoTime()));
+        check(polledKind(timer) == kind, "event of kind " + kind + " handled after its deadline");
+      }
+
+      // Queued before a pause, a cancel or a new session
+      timer.events.add(new TimerEvent(GAME_END, 0, timer.gameGeneration, timer.gameRun, clock.nanoTime()));
+      timer.pauseGame();
+      check(polledKind(timer) == -1, "no event after its game is paused");
+      timer.events.add(new TimerEvent(GAME_WARNING, 1, timer.gameGeneration, timer.gameRun, clock.nanoTime()));
+      timer.cancelGame();
+      check(polledKind(timer) == -1, "no event after its game is cancelled");
+      timer.events.add(new TimerEvent(SESSION_END, 0, timer.sessionGeneration, 0, clock.nanoTime()));
+      timer.cancelSession();
+      check(polledKind(timer) == -1, "no event after its session is replaced");
+
+      // Events of the game's next run are kept
+      timer.scheduleGame(new Countdown(60*SECOND), clock.nanoTime());
+      timer.cancel(timer.gameTasks);
+      timer.events.add(new TimerEvent(GAME_END, 0, timer.gameGeneration, timer.gameRun, clock.nanoTime()));
+      check(polledKind(timer) == GAME_END, "event of resumed game handled");
+    } finally {
+      timer.timer.shutdownNow();
+    }
+  }
+
+  void testFixtureBundle() {
+    // Every list in the bundle matches its CSV file, so the shipped bundle has been rebuilt since they last changed
+    FixtureBundle bundle = new FixtureBundle("fixtures.bin");
+    check(bundle.nLists > 0, "fixture bundle has lists in it");
+    for (int i = 0; i < bundle.nLists; i++) {
+      int entry = bundle.HEADER_BYTES + i*bundle.ENTRY_BYTES;
+      int nSim = bundle.buffer.get(entry);
+      int nTeams = bundle.buffer.get(entry+1);
+      Fixtures bundled = bundle.getFixtures(nSim, nTeams);
+      Fixtures read = new Fixtures(loadTable("nsim-nteams/" + nSim + "-" + nTeams + ".csv"));
+      check(bundled != null && Arrays.equals(bundled.teams, read.teams), "bundled list for " + nTeams + " teams on " + nSim + " ice matches its CSV file");
+    }
+
+    // A list whose file doesn't match its checksum (here, another list's file) is left to be read from the file
+    FixtureBundle stale = new FixtureBundle("fixtures.bin");
+    int other = stale.HEADER_BYTES + stale.ENTRY_BYTES;
+    check(!stale.isCurrent(0, stale.buffer.get(other), stale.buffer.get(other+1)), "list checked against another list's file is out of date");
+    check(stale.getFixtures(stale.buffer.get(stale.HEADER_BYTES), stale.buffer.get(stale.HEADER_BYTES+1)) == null, "out of date list not served from bundle");
+  }
+
+  void testFixtureLimits() {
+    // Too few teams for the games at once must be refused rather than looping forever
+    int[] tooFew = {
+      1, 3, 5, 7
+    };
+    for (int nSim = 1; nSim <= tooFew.length; nSim++) {
+      boolean refused = false;
+      try {
+        new FixtureGenerator(tooFew[nSim-1], nSim, 1);
+      } catch (IllegalArgumentException e) {
+        refused = true;
+      }
+      check(refused, "generator refuses " + tooFew[nSim-1] + " teams on " + nSim + " ice");
+      Fixtures fixtures = new FixtureGenerator(2*nSim, nSim, 1).generate(10);
+      check(fixtures.nRows == 10, "generator makes fixtures for " + 2*nSim + " teams on " + nSim + " ice");
+    }
+
+    // Games at once are limited by the number of teams, whatever the thresholds say
+    int[] lowThresholds = {
+      2, 3, 4, 5, 6
+    };
+    for (int nTeams = 3; nTeams <= 20; nTeams++) {
+      int nSim = simFor(nTeams, lowThresholds);
+      check(nSim >= 1 && nTeams >= 3*nSim-1, nTeams + " teams given " + nSim + " games at once");
+    }
+  }
+
+  long displayAllocations(Benchmark benchmark, Runnable display) {
+    // Bytes allocated per call once warmed up
+    for (int i = 0; i < WARMUP_CALLS; i++) {
+      display.run();
+    }
+    long startBytes = benchmark.allocatedBytes();
+    for (int i = 0; i < MEASURED_CALLS; i++) {
+      display.run();
+    }
+    return (benchmark.allocatedBytes() - startBytes) / MEASURED_CALLS;
+  }
+
+  void testDisplayAllocations() {
+    // Drawing a frame of a game in progress mustn't allocate anything but what the renderer does itself
+    // Interface is rebuilt in a renderer which draws nothing, in the same way as the benchmark does
+    Benchmark benchmark = new Benchmark();
+    if (benchmark.allocatedBytes() < 0) {
+      println("Skipping allocation checks, this JVM can't count allocations");
+      return;
+    }
+    SavedGlobals saved = new SavedGlobals();
+    g = new NullGraphics(1920, 1080);
+    width = 1920;
+    height = 1080;
+    try {
+      int nSim = 3;
+      int nTeams = 14;
+      layout.update(width, height, nSim);
+      engine = new SessionEngine(180);
+      controlPanel = new ControlPanel("Self test", assets.getImage("images/logo.png"), 0, 0, nTeams, nSim, new int[] {
+        5, 8, 20, 28, 40
+      });
+      sessionBar = new SessionBar();
+      matchList = new MatchList(nSim);
+      matchList.isLogging = false;
+      controlPanel.deactivate();
+      long wallNow = clock.wallMillis();
+      engine.start(fixtureLoader.rebuild(nSim, nTeams, 1), nTeams, matchList.listLength, wallNow + 3600000L, wallNow, clock.nanoTime());
+      sessionBar.activate();
+      matchList.activate(nSim);
+      engine.play(clock.nanoTime());
+      matchList.refreshClock(clock.nanoTime());
+
+      long bytes = displayAllocations(benchmark, new Runnable() {
+        public void run() {
+          matchList.display();
+        }
+      });
+      check(bytes == 0, "match list allocates " + bytes + " bytes per frame");
+      bytes = displayAllocations(benchmark, new Runnable() {
+        public void run() {
+          sessionBar.display();
+        }
+      });
+      check(bytes == 0, "session bar allocates " + bytes + " bytes per frame");
+      bytes = displayAllocations(benchmark, new Runnable() {
+        public void run() {
+          controlPanel.display();
+        }
+      });
+      check(bytes == 0, "control panel allocates " + bytes + " bytes per frame");
+    } catch (RuntimeException e) {
+      check(false, "allocation test threw " + e);
+    } finally {
+      engine.end();
+      saved.restore();
+    }
+  }
+
+  void testEngineDrift() {
+    // A game which is paused and resumed many times still takes exactly its length of playing time
+    VirtualClock virtual = new VirtualClock(0);
+    SessionEngine testEngine = new SessionEngine(180);
+    testEngine.start(fixtureLoader.rebuild(1, 4, 1), 4, 2, 3600000L, virtual.wallMillis(), virtual.nanoTime());
+    long played = 0;
+    for (int i = 0; i < 1000; i++) {
+      testEngine.play(virtual.nanoTime());
+      virtual.advance(123456789L);
+      played += 123456789L;
+      testEngine.pause(virtual.nanoTime());
+      virtual.advance(SECOND/3);
+    }
+    long remaining = testEngine.gameClock.remainingAt(virtual.nanoTime());
+    check(remaining == 180*SECOND - played, "game clock shows " + remaining + " ns left after 1000 pauses, expected " + (180*SECOND - played));
+
+    // Session clock runs on through pauses
+    long sessionRemaining = testEngine.sessionClock.remainingAt(virtual.nanoTime());
+    check(sessionRemaining == 3600*SECOND - virtual.nanoTime(), "session clock shows " + sessionRemaining + " ns left");
+    testEngine.end();
+  }
+
+  void testFixtureSearch() {
+    // No candidate may score below the cost's lower bound, or the search could stop at a list which isn't the best
+    RestCost cost = new RestCost();
+    for (int nSim = 1; nSim <= 4; nSim++) {
+      for (int nTeams = 2*nSim; nTeams <= 30; nTeams++) {
+        Fixtures shipped = fixtureLoader.loadShipped(nSim, nTeams);
+        for (long seed = 1; seed <= 3; seed++) {
+          Fixtures candidate = fixtureSearch.makeCandidate(nSim, nTeams, shipped, seed);
+          float score = cost.score(candidate, nTeams);
+          float bound = cost.lowerBound(nSim, nTeams, candidate.nRows);
+          check(score >= bound, nTeams + " teams on " + nSim + " ice scored " + score + ", below bound of " + bound);
+        }
+      }
+    }
+
+    // Search stops as soon as it finds a list which can't be beaten, such as any list for two teams
+    long start = System.nanoTime();
+    fixtureSearch.findBest(1, 2, null, new AtomicBoolean(false));
+    long searchMillis = (System.nanoTime() - start) / 1000000L;
+    check(searchMillis < fixtureSearch.budgetMillis/2, "search for two teams took " + searchMillis + " ms");
+
+    // A search which is no longer wanted stops when cancelled, rather than using up its budget
+    final FixtureSearch longSearch = new FixtureSearch(cost, 60000);
+    final AtomicBoolean isCancelled = new AtomicBoolean(false);
+    FutureTask<Fixtures> search = new FutureTask<Fixtures>(new Callable<Fixtures>() {
+      public Fixtures call() {
+        return longSearch.findBest(3, 14, fixtureLoader.loadShipped(3, 14), isCancelled);
+      }
+    });
+    new Thread(search, "Self test search").start();
+    try {
+      Thread.sleep(50);
+      start = System.nanoTime();
+      isCancelled.set(true);
+      Fixtures result = search.get(1, TimeUnit.SECONDS);
+      searchMillis = (System.nanoTime() - start) / 1000000L;
+      check(result == null, "cancelled search gave up its result");
+      check(searchMillis < 100, "cancelled search took " + searchMillis + " ms to stop");
+    } catch (Exception e) {
+      check(false, "cancelled search didn't stop: " + e);
+    } finally {
+      longSearch.pool.shutdownNow();
+    }
+
+    // Threads asking for the same generated list at once all get their own copy of it
+    final CountDownLatch ready = new CountDownLatch(1);
+    ArrayList<FutureTask<Fixtures>> requests = new ArrayList<FutureTask<Fixtures>>();
+    for (int i = 0; i < 8; i++) {
+      FutureTask<Fixtures> request = new FutureTask<Fixtures>(new Callable<Fixtures>() {
+        public Fixtures call() throws InterruptedException {
+          ready.await();
+          return fixtureCache.getFixtures(3, 29, 12345);
+        }
+      });
+      requests.add(request);
+      new Thread(request, "Self test fixtures " + i).start();
+    }
+    ready.countDown();
+    try {
+      Fixtures first = requests.get(0).get();
+      for (int i = 1; i < requests.size(); i++) {
+        Fixtures fixtures = requests.get(i).get();
+        boolean isSame = fixtures != first && fixtures.nRows == first.nRows;
+        for (int row = 0; isSame && row < first.nRows; row++) {
+          for (int j = 0; j < first.rowLength; j++) {
+            isSame &= fixtures.getTeam(row, j) == first.getTeam(row, j);
+          }
+        }
+        check(isSame, "thread " + i + " got its own copy of the same cached list");
+      }
+    } catch (Exception e) {
+      check(false, "fixture cache test threw " + e);
+    }
+  }
+
+  void testSimulation() {
+    // An evening of sessions, with warnings and ends handled through the interface as they fall due
+    String evening = "14x2x180,18x3x120,9x1x60";
+    int[] gameWarnings = {
+      30, 10
+    };
+    int[] sessionWarnings = {
+      15, 5
+    };
+    Simulation simulation = new Simulation(180, gameWarnings, sessionWarnings, 1);
+    int nGames = simulation.runAll(evening);
+    check(simulation.nProblems == 0, "simulation found " + simulation.nProblems + " problems");
+    check(simulation.sessionsEnded == 3, simulation.sessionsEnded + " of 3 simulated sessions ended on time");
+    check(nGames > 0 && nGames == simulation.gamesEnded + simulation.gamesSkipped, nGames + " simulated games, " + simulation.gamesEnded + " ended and " + simulation.gamesSkipped + " skipped");
+
+    // Same seed gives the same evening
+    Simulation again = new Simulation(180, gameWarnings, sessionWarnings, 1);
+    check(again.runAll(evening) == nGames && again.gamesSkipped == simulation.gamesSkipped, "simulation repeats itself");
+
+    // Badly formed sessions are reported and skipped, and simulated deadlines leave no timer thread running
+    Simulation badSpec = new Simulation(180, gameWarnings, sessionWarnings, 1);
+    try {
+      check(badSpec.runAll("10x2,10xAx60,9x1x60") > 0 && badSpec.sessionsEnded == 1, "bad sessions skipped, good one simulated");
+    } catch (RuntimeException e) {
+      check(false, "bad simulation spec threw " + e);
+    }
+    check(badSpec.simulatedDeadlines.timer.isShutdown(), "simulated deadlines stop their timer thread");
+  }
+}
+
+class RecordingSink implements AudioSink {
+  // Notes when each cue arrives and which clip it was, instead of playing it
+
+  ArrayBlockingQueue<Long> times;
+  ArrayBlockingQueue<byte[]> clips;
+
+  RecordingSink() {
+    times = new ArrayBlockingQueue<Long>(256);
+    clips = new ArrayBlockingQueue<byte[]>(256);
+  }
+
+  public void play(byte[] pcm) {
+    clips.offer(pcm);
+    times.offer(clock.nanoTime());
+  }
+}
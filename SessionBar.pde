@@ -22,16 +22,18 @@
 //
 
 class SessionBar {
-  int startMillis, totalMillis, millisElapsed, millisRemaining, hoursElapsed, minsElapsed, hoursRemaining, minsRemaining;
+  int millisRemaining, warningsPassed, hoursElapsed, minsElapsed, hoursRemaining, minsRemaining;
+  int drawnProgress;
   boolean isActive, hasChangedColour;
   color highlightColour;
   float progress;
   String timeElapsed, timeRemaining;
   PFont barFont;
+  PImage shadow;
 
   SessionBar() {
-    // Load font
-    barFont = loadFont("fonts/SquarishSansCTRegular-24.vlw");
+    // Get shared font
+    barFont = assets.getFont("fonts/SquarishSansCTRegular-24.vlw");
 
     // Initialise variables
     timeElapsed = String.format("%02d" + ":" + "%02d", 0, 0);
@@ -40,23 +42,33 @@ class SessionBar {
     hasChangedColour = false;
   }
 
-  void activate(int endHour, int endMin) {
-    // Calculate time remaining until inputted end time
-    int hours = endHour - hour();
-    if (hours < 0) {
-      hours += 24;
-    }
-    int mins = endMin - minute();
-    int secs = -1 * second();
-    totalMillis = 1000 * (secs + 60 * (mins + 60 * hours));
-    startMillis = millis();
-    millisElapsed = 0;
-    millisRemaining = totalMillis;
-    progress = 0.0;
+  void activate() {
+    // Shows session which has just been started (or resumed) by the engine
+    // Warnings and end are timed on timer thread
+    long now = clock.nanoTime();
+    warningsPassed = deadlines.scheduleSession(engine.sessionClock, now);
+    progress = engine.sessionClock.progressAt(now);
+    millisRemaining = (int) (engine.sessionClock.remainingAt(now) / 1000000L);
     isActive = true;
   }
 
+  long endTimeFor(int endHour, int endMin) {
+    // Returns wall clock time of inputted end time (tomorrow if already passed)
+    Calendar end = Calendar.getInstance();
+    long nowMillis = clock.wallMillis();
+    end.setTimeInMillis(nowMillis);
+    end.set(Calendar.HOUR_OF_DAY, endHour);
+    end.set(Calendar.MINUTE, endMin);
+    end.set(Calendar.SECOND, 0);
+    end.set(Calendar.MILLISECOND, 0);
+    if (end.getTimeInMillis() <= nowMillis) {
+      end.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    return end.getTimeInMillis();
+  }
+
   void deactivate() {
+    deadlines.cancelSession();
     millisRemaining = 0;
     isActive = false;
     hasChangedColour = false;
@@ -64,45 +76,36 @@ class SessionBar {
 
   void display() {
     if (isActive) {
-      // Set highlight according to time remaining
+      // Set highlight according to warnings given so far
       // Boolean flags change so that rest of UI will update
-      if (millisRemaining > 1000*60*15) {
-        // Green if more than 15 mins
-        if (highlightColour != TIMER_GREEN) {
-          highlightColour = TIMER_GREEN;
-          hasChangedColour = true;
-        }
-      } else if (millisRemaining > 1000*60*5) {
-        // Amber for 5 to 25 mins
-        if (highlightColour != TIMER_AMBER) {
-          highlightColour = TIMER_AMBER;
-          hasChangedColour = true;
-        }
-      } else {
-        if (highlightColour != TIMER_RED) {
-          // Red for less than 5 mins
-          highlightColour = TIMER_RED;
-          hasChangedColour = true;
-        }
+      color newColour = colourFor(warningsPassed);
+      if (highlightColour != newColour) {
+        highlightColour = newColour;
+        hasChangedColour = true;
       }
     } else {
       highlightColour = TIMER_GREY;
     }
 
-    // Generate clock string
-    hoursRemaining = floor(millisRemaining / (1000.0*60.0*60.0));
-    minsRemaining = ceil((millisRemaining - hoursRemaining*1000.0*60.0*60.0) / (1000.0*60.0));
-    timeRemaining = String.format("%02d" + ":" + "%02d", hoursRemaining, minsRemaining);
+    // Generate clock string (only when it has changed)
+    int hours = floor(millisRemaining / (1000.0*60.0*60.0));
+    int mins = ceil((millisRemaining - hours*1000.0*60.0*60.0) / (1000.0*60.0));
+    if (hours != hoursRemaining || mins != minsRemaining) {
+      hoursRemaining = hours;
+      minsRemaining = mins;
+      timeRemaining = labels.twoDigits(hoursRemaining) + ":" + labels.twoDigits(minsRemaining);
+    }
 
     // Draw panel
     fill(0);
     rect(0, height-40, width, 40);
 
-    // Draw shadow
-    for (int i = 0; i < 15; i++) {
-      fill(0, 0, 0, 90-6*i);
-      rect(0, height-(40+i), width, 1);
+    // Draw shadow (rendered once per window width)
+    if (shadow == null || shadow.width != width) {
+      shadow = layerCache.renderShadow(width, 15, 90, 6, UP);
     }
+    noTint();
+    image(shadow, 0, height-54);
 
     // Print session clock
     fill(highlightColour);
@@ -117,20 +120,68 @@ class SessionBar {
     rect(121, height-20, width-223, 2);
     fill(TIMER_GREY);
     rect(121, height-20, (width-223.0)*progress, 2);
+    drawnProgress = int((width-223.0)*progress);
+  }
+
+  color colourFor(int passed) {
+    if (passed == 0) {
+      // Green until first warning
+      return TIMER_GREEN;
+    } else if (passed < deadlines.sessionWarnings.length) {
+      // Amber until final warning
+      return TIMER_AMBER;
+    }
+    // Red after final warning
+    return TIMER_RED;
   }
 
   color getHighlightColour() {
     return highlightColour;
   }
 
+  void handle(TimerEvent event) {
+    // Reacts to session deadlines from the timer thread
+    if (event.kind == SESSION_WARNING) {
+      warningsPassed = event.level;
+    } else if (event.kind == SESSION_END) {
+      deactivate();
+    }
+  }
+
+  long nextChangeAt(long now) {
+    // Returns time at which the bar will next look different from what was just drawn, if nothing else happens
+    // Warnings and the end of the session ask for a frame themselves
+    if (hasChangedColour) {
+      // Rest of interface takes on new colour in the next frame
+      return now;
+    }
+    Countdown sessionClock = engine.sessionClock;
+    if (!isActive || sessionClock.isOverAt(now)) {
+      return Long.MAX_VALUE;
+    }
+
+    // Clock shows minutes rounded up, so changes when the time reaches the whole minute below what was drawn
+    // (or just after it, if a whole minute was drawn)
+    long elapsed = sessionClock.elapsedAt(now);
+    long remaining = sessionClock.remainingAt(now);
+    long changeMillis = millisRemaining%60000 == 0 ? millisRemaining-1 : millisRemaining - millisRemaining%60000;
+    long nextMinute = now + remaining - (changeMillis+1)*1000000L + 1;
+
+    // Bar grows a pixel at a time
+    float barWidth = width-223.0;
+    if (barWidth <= 0) {
+      return nextMinute;
+    }
+    long nextPixel = now + (long) Math.ceil((drawnProgress+1) * (double) sessionClock.lengthNanos / barWidth) - elapsed;
+    return Math.min(nextMinute, nextPixel);
+  }
+
   void update() {
     // Update session timer during session
-    if (isActive && millisRemaining > 0) {
-      millisElapsed = millis() - startMillis;
-      progress = (1.0*millisElapsed) / (1.0*totalMillis);
-      millisRemaining = totalMillis - millisElapsed;
-    } else if (isActive) {
-      deactivate();
+    if (isActive) {
+      long now = clock.nanoTime();
+      progress = engine.sessionClock.progressAt(now);
+      millisRemaining = (int) (engine.sessionClock.remainingAt(now) / 1000000L);
     }
   }
 }
@@ -0,0 +1,139 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+interface Clock {
+  // Source of monotonic and wall clock time
+  long nanoTime();
+  long wallMillis();
+}
+
+class SystemClock implements Clock {
+  // The real time, used when running normally
+
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+
+  public long wallMillis() {
+    return System.currentTimeMillis();
+  }
+}
+
+class VirtualClock implements Clock {
+  // Time which only moves when told to, used by simulations
+
+  long nanos, startWallMillis;
+
+  VirtualClock(long startWallMillis_) {
+    nanos = 0;
+    startWallMillis = startWallMillis_;
+  }
+
+  void advance(long stepNanos) {
+    nanos += stepNanos;
+  }
+
+  public long nanoTime() {
+    return nanos;
+  }
+
+  public long wallMillis() {
+    return startWallMillis + nanos/1000000L;
+  }
+}
+
+class SessionEngine {
+  // Timing and scheduling state of a session: which game is on, whether it
+  // is being played, and the game and session clocks. Nothing here draws or
+  // reads the time, so it can be driven by the interface on the real clock
+  // or by a simulation on a virtual one. Every change which depends on time
+  // is given the timestamp it happens at.
+
+  int matchLength, currentGame, nTeams;
+  boolean isActive, inGame;
+  long endWallMillis;
+  Countdown gameClock, sessionClock;
+  FixtureStream matches;
+
+  SessionEngine(int matchLength_) {
+    matchLength = matchLength_;
+    currentGame = 1;
+    nTeams = 0;
+    isActive = false;
+    inGame = false;
+    endWallMillis = 0;
+    gameClock = new Countdown(matchLength * 1000000000L);
+    sessionClock = new Countdown(0);
+    matches = new FixtureStream();
+  }
+
+  void advance(int step) {
+    // Finishes current game and moves on (or back)
+    inGame = false;
+    gameClock.reset();
+
+    // Can't go back before first game of session
+    currentGame = max(1, currentGame+step);
+  }
+
+  void end() {
+    // Finishes session, leaving no fixtures
+    inGame = false;
+    gameClock.reset();
+    isActive = false;
+    matches = new FixtureStream();
+  }
+
+  void pause(long now) {
+    inGame = false;
+    gameClock.pause(now);
+  }
+
+  void play(long now) {
+    // Begins new game or resumes current one
+    inGame = true;
+    gameClock.start(now);
+  }
+
+  void resume(int game, long elapsedNanos) {
+    // Moves to a game which was already part played, e.g. before a restart
+    currentGame = game;
+    inGame = false;
+    gameClock.reset();
+    gameClock.setElapsed(elapsedNanos);
+  }
+
+  void start(Fixtures fixtures, int nTeams_, int lookAhead, long endWallMillis_, long wallNow, long now) {
+    // Begins session at first game, to run until the given wall clock time
+    nTeams = nTeams_;
+    currentGame = 1;
+    isActive = true;
+    inGame = false;
+    gameClock.reset();
+    matches = new FixtureStream(fixtures, nTeams, lookAhead);
+    endWallMillis = endWallMillis_;
+    sessionClock = new Countdown((endWallMillis-wallNow) * 1000000L);
+    sessionClock.start(now);
+  }
+}
@@ -0,0 +1,179 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class SessionJournal {
+  // Append-only record of the session in progress, kept in data/ so that it
+  // can be picked up again after a crash, restart or the laptop sleeping.
+  // Each line is an event name, the wall clock time in milliseconds, then
+  // any values:
+  //
+  //   start,<time>,<nSim>,<nTeams>,<permutation seed>,<session end time>
+  //   advance,<time>,<game number>
+  //   play,<time>,<game time elapsed in ms>
+  //   pause,<time>,<game time elapsed in ms>
+  //   end,<time>
+  //
+  // Lines are written straight away, but only forced to disk by a background
+  // thread at most every FORCE_MILLIS. The file is emptied when a session
+  // ends, as nothing in it is needed any more.
+
+  final int FORCE_MILLIS = 500;
+
+  File file;
+  FileChannel channel;
+  boolean needsForce;
+  ScheduledExecutorService syncer;
+
+  // Unfinished session found by replay()
+  int nSim, nTeams, game;
+  long permutationSeed, endWallMillis, elapsedMillis;
+  boolean isPlaying;
+
+  SessionJournal() {
+    // Keeps nothing, for sessions which are only being simulated
+    file = null;
+    channel = null;
+    needsForce = false;
+  }
+
+  SessionJournal(String path) {
+    file = dataFile(path);
+    channel = null;
+    needsForce = false;
+    try {
+      channel = new FileOutputStream(file, true).getChannel();
+    } catch (IOException e) {
+      println("Could not open session journal, sessions won't be resumable: " + e.getMessage());
+      return;
+    }
+    syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "Journal sync");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    syncer.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        force();
+      }
+    }, FORCE_MILLIS, FORCE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  synchronized void append(String event) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.write(ByteBuffer.wrap((event + "\n").getBytes()));
+      needsForce = true;
+    } catch (IOException e) {
+      println("Could not write to session journal: " + e.getMessage());
+    }
+  }
+
+  synchronized void force() {
+    if (channel == null || !needsForce) {
+      return;
+    }
+    try {
+      channel.force(false);
+      needsForce = false;
+    } catch (IOException e) {
+      println("Could not sync session journal: " + e.getMessage());
+    }
+  }
+
+  void recordAdvance(int newGame) {
+    append("advance," + clock.wallMillis() + "," + newGame);
+  }
+
+  synchronized void recordEnd() {
+    // Session is over, so compact journal down to nothing
+    append("end," + clock.wallMillis());
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.truncate(0);
+      channel.force(false);
+      needsForce = false;
+    } catch (IOException e) {
+      println("Could not compact session journal: " + e.getMessage());
+    }
+  }
+
+  void recordPause(long elapsed) {
+    append("pause," + clock.wallMillis() + "," + elapsed);
+  }
+
+  void recordPlay(long elapsed) {
+    append("play," + clock.wallMillis() + "," + elapsed);
+  }
+
+  void recordStart(int newNSim, int newNTeams, long newPermutationSeed, long newEndWallMillis) {
+    append("start," + clock.wallMillis() + "," + newNSim + "," + newNTeams + "," + newPermutationSeed + "," + newEndWallMillis);
+  }
+
+  boolean replay() {
+    // Reads back an unfinished session, returning false if there isn't one
+    String[] lines = file != null && file.exists() ? loadStrings(file.getPath()) : null;
+    if (lines == null) {
+      return false;
+    }
+    boolean isUnfinished = false;
+    for (String line : lines) {
+      String[] parts = split(line, ',');
+      try {
+        long wallMillis = Long.parseLong(parts[1]);
+        if (parts[0].equals("start")) {
+          nSim = Integer.parseInt(parts[2]);
+          nTeams = Integer.parseInt(parts[3]);
+          permutationSeed = Long.parseLong(parts[4]);
+          endWallMillis = Long.parseLong(parts[5]);
+          game = 1;
+          elapsedMillis = 0;
+          isPlaying = false;
+          isUnfinished = true;
+        } else if (parts[0].equals("advance")) {
+          game = Integer.parseInt(parts[2]);
+          elapsedMillis = 0;
+          isPlaying = false;
+        } else if (parts[0].equals("play")) {
+          // Game kept going while the program wasn't running
+          elapsedMillis = Long.parseLong(parts[2]) + clock.wallMillis() - wallMillis;
+          isPlaying = true;
+        } else if (parts[0].equals("pause")) {
+          elapsedMillis = Long.parseLong(parts[2]);
+          isPlaying = false;
+        } else if (parts[0].equals("end")) {
+          isUnfinished = false;
+        }
+      } catch (RuntimeException e) {
+        // Skip line cut short by a crash
+      }
+    }
+    return isUnfinished;
+  }
+}
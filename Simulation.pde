@@ -0,0 +1,258 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+
+class Simulation {
+  // Runs sessions through the match list and session bar on a virtual clock,
+  // with no window and no waiting, to check scheduling over hundreds of games
+  // and to plan new formats. Buttons are pressed as the operator would: games
+  // are played to the end, paused part way through or skipped at random,
+  // with a changeover between each. Warnings and ends are handled as they
+  // fall due, just as draw() would, and after each one the interface is
+  // checked against the clocks. Sessions are given as a comma-separated list
+  // of <teams>x<ice>x<minutes>, run one after another as if END and START
+  // had been pressed in between. The same seed always gives the same evening.
+
+  final long CHANGEOVER_NANOS = 45 * 1000000000L;
+  final long MAX_PAUSE_NANOS = 120 * 1000000000L;
+  final float PAUSE_CHANCE = 0.1;
+  final float SKIP_CHANCE = 0.02;
+
+  int matchLength, nProblems, gamesEnded, gamesSkipped, sessionsEnded;
+  VirtualClock virtualClock;
+  SimulatedDeadlines simulatedDeadlines;
+  Random random;
+
+  Simulation(int matchLength_, int[] gameWarningSecs, int[] sessionWarningMins, long seed) {
+    matchLength = matchLength_;
+    nProblems = 0;
+    gamesEnded = 0;
+    gamesSkipped = 0;
+    sessionsEnded = 0;
+    virtualClock = new VirtualClock(System.currentTimeMillis());
+    simulatedDeadlines = new SimulatedDeadlines(gameWarningSecs, sessionWarningMins);
+    random = new Random(seed);
+  }
+
+  void checkState(long now) {
+    // Once every deadline which has passed is handled, the interface must agree with the clocks
+    Countdown gameClock = engine.gameClock;
+    if (engine.inGame && gameClock.isOverAt(now)) {
+      problem("game " + engine.currentGame + " still running after its end");
+    } else if (engine.inGame && matchList.warningsPassed != deadlines.warningsPassed(deadlines.gameWarnings, gameClock.remainingAt(now))) {
+      problem("game " + engine.currentGame + " showing " + matchList.warningsPassed + " warnings");
+    }
+    Countdown sessionClock = engine.sessionClock;
+    if (sessionBar.isActive == sessionClock.isOverAt(now)) {
+      problem(sessionBar.isActive ? "session still showing after its end" : "session ended early");
+    } else if (sessionBar.isActive && sessionBar.warningsPassed != deadlines.warningsPassed(deadlines.sessionWarnings, sessionClock.remainingAt(now))) {
+      problem("session showing " + sessionBar.warningsPassed + " warnings");
+    }
+  }
+
+  void handleDeadlines() {
+    // Runs deadlines which have passed and hands their events to the interface, as the next frame would
+    long now = clock.nanoTime();
+    simulatedDeadlines.runDue(now);
+    for (TimerEvent event = deadlines.poll(); event != null; event = deadlines.poll()) {
+      if (event.kind == GAME_END) {
+        gamesEnded++;
+      } else if (event.kind == SESSION_END) {
+        sessionsEnded++;
+      }
+      matchList.handle(event);
+      sessionBar.handle(event);
+    }
+    checkState(now);
+  }
+
+  void problem(String description) {
+    nProblems++;
+    println(String.format("Simulation problem after %.1f s: %s", virtualClock.nanoTime()/1.0e9, description));
+  }
+
+  long randomPart(long nanos) {
+    return (long) (random.nextDouble() * nanos);
+  }
+
+  int runAll(String spec) {
+    // Returns total number of games played
+    // Clock, engine, deadlines and interface are swapped for our own while sessions run, and put back afterwards
+    long startNanos = System.nanoTime();
+    int totalGames = 0;
+    SavedGlobals saved = new SavedGlobals();
+    clock = virtualClock;
+    engine = new SessionEngine(matchLength);
+    deadlines = simulatedDeadlines;
+    journal = new SessionJournal();
+    sessionBar = new SessionBar();
+    matchList = new MatchList(saved.nSim);
+    matchList.isLogging = false;
+    try {
+      for (String session : split(spec, ',')) {
+        // Each entry must be three whole numbers, or int() would quietly read the rest as zero
+        String entry = session.trim();
+        if (!entry.matches("\\d+x\\d+x\\d+")) {
+          println("Could not simulate " + entry + ": expected <teams>x<ice>x<minutes>");
+          continue;
+        }
+        int[] parts = int(split(entry, 'x'));
+        try {
+          totalGames += runSession(parts[0], parts[1], parts[2]);
+        } catch (IllegalArgumentException e) {
+          println("Could not simulate " + entry + ": " + e.getMessage());
+        }
+      }
+    } finally {
+      saved.restore();
+    }
+    println(String.format("Simulated %d games in %.1f ms, %d problems", totalGames, (System.nanoTime()-startNanos)/1.0e6, nProblems));
+    return totalGames;
+  }
+
+  int runSession(int nTeams, int nSim, int minutes) {
+    // Plays session until its end is handled, returning the number of games
+    long wallNow = clock.wallMillis();
+    engine.start(fixtureLoader.rebuild(nSim, nTeams, random.nextLong()), nTeams, matchList.listLength, wallNow + minutes*60000L, wallNow, clock.nanoTime());
+    sessionBar.activate();
+    matchList.activate(nSim);
+    int[] gamesPlayed = new int[nTeams+1];
+    int[] lastGame = new int[nTeams+1];
+    int longestWait = 0;
+    int backToBack = 0;
+    int paused = 0;
+    int skipped = 0;
+    while (sessionBar.isActive) {
+      // Note who is on the ice
+      int game = engine.currentGame;
+      int row = engine.matches.rowFor(game);
+      for (int j = 0; j < engine.matches.window.rowLength; j++) {
+        int team = engine.matches.window.getTeam(row, j);
+        gamesPlayed[team]++;
+        if (lastGame[team] > 0) {
+          longestWait = max(longestWait, game-lastGame[team]-1);
+          if (lastGame[team] == game-1) {
+            backToBack++;
+          }
+        }
+        lastGame[team] = game;
+      }
+
+      // Change over, then play game with the odd pause or skip
+      runUntil(clock.nanoTime() + CHANGEOVER_NANOS);
+      matchList.startGame();
+      if (random.nextFloat() < PAUSE_CHANCE) {
+        runUntil(clock.nanoTime() + randomPart(engine.gameClock.remainingAt(clock.nanoTime())));
+        matchList.pauseGame();
+        runUntil(clock.nanoTime() + randomPart(MAX_PAUSE_NANOS));
+        matchList.startGame();
+        paused++;
+      }
+      if (random.nextFloat() < SKIP_CHANCE) {
+        runUntil(clock.nanoTime() + randomPart(engine.gameClock.remainingAt(clock.nanoTime())));
+        matchList.advanceGame(1);
+        skipped++;
+      } else {
+        // Game's end moves the list on by itself
+        runUntil(clock.nanoTime() + engine.gameClock.remainingAt(clock.nanoTime()));
+      }
+      if (engine.currentGame != game+1) {
+        problem("game " + game + " didn't end when its clock ran out");
+      }
+    }
+    int nGames = engine.currentGame-1;
+    gamesSkipped += skipped;
+    endSession();
+
+    // Report on session
+    int[] counts = subset(gamesPlayed, 1);
+    println(String.format("%d teams on %d ice for %d min: %d games (%d paused, %d skipped), %d-%d games per team, longest wait %d games, %d back-to-back", nTeams, nSim, minutes, nGames, paused, skipped, min(counts), max(counts), longestWait, backToBack));
+    return nGames;
+  }
+
+  void runUntil(long target) {
+    // Moves clock on to target, stopping at each deadline on the way
+    for (long due = simulatedDeadlines.nextDue(); due <= target; due = simulatedDeadlines.nextDue()) {
+      virtualClock.advance(Math.max(0, due - clock.nanoTime()));
+      handleDeadlines();
+    }
+    virtualClock.advance(target - clock.nanoTime());
+    handleDeadlines();
+  }
+}
+
+class SimulatedDeadlines extends DeadlineTimer {
+  // Deadline timer whose tasks are run by a simulation when its virtual
+  // clock reaches them, rather than by a thread of their own. Cues go
+  // nowhere and events aren't logged. The executor made by DeadlineTimer is
+  // never used, so its thread is stopped straight away.
+
+  ArrayList<FutureTask<Object>> pending;
+  ArrayList<Long> dueTimes;
+
+  SimulatedDeadlines(int[] gameWarningSecs, int[] sessionWarningMins) {
+    super(gameWarningSecs, sessionWarningMins, new AudioCues(false, gameWarningSecs.length));
+    timer.shutdownNow();
+    isLogging = false;
+    pending = new ArrayList<FutureTask<Object>>();
+    dueTimes = new ArrayList<Long>();
+  }
+
+  int earliestDue(long now) {
+    // Index of earliest task due by now (cancelled or not), or -1 if there is none
+    int earliest = -1;
+    for (int i = 0; i < pending.size(); i++) {
+      if (dueTimes.get(i) <= now && (earliest < 0 || dueTimes.get(i) < dueTimes.get(earliest))) {
+        earliest = i;
+      }
+    }
+    return earliest;
+  }
+
+  long nextDue() {
+    // Returns time of earliest task still to run, or Long.MAX_VALUE if there is none
+    long next = Long.MAX_VALUE;
+    for (int i = 0; i < pending.size(); i++) {
+      if (!pending.get(i).isCancelled()) {
+        next = Math.min(next, dueTimes.get(i));
+      }
+    }
+    return next;
+  }
+
+  void runDue(long now) {
+    // Runs tasks which are due, earliest first (a cancelled task does nothing)
+    for (int i = earliestDue(now); i >= 0; i = earliestDue(now)) {
+      FutureTask<Object> task = pending.remove(i);
+      dueTimes.remove(i);
+      task.run();
+    }
+  }
+
+  Future<?> scheduleTask(Runnable task, long dueNanos) {
+    FutureTask<Object> future = new FutureTask<Object>(task, null);
+    pending.add(future);
+    dueTimes.add(dueNanos);
+    return future;
+  }
+}
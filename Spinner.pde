@@ -26,6 +26,7 @@ class Spinner {
   boolean isActive, changeMade;
   color activeColour, inactiveColour;
   PFont spinnerFont;
+  PShape boxShape;
 
   Spinner(int xPos_, int yPos_, int startVal, int minVal_, int maxVal_, int step_, color activeColour_, color inactiveColour_) {
     xPos = xPos_;
@@ -40,7 +41,15 @@ class Spinner {
     isActive = true;
     changeMade = false;
 
-    spinnerFont = loadFont("fonts/SquarishSansCTRegular-24.vlw");
+    spinnerFont = assets.getFont("fonts/SquarishSansCTRegular-24.vlw");
+  }
+
+  void addHoverAreas(HoverAreas areas) {
+    // Same boxes as hoveredArrow()
+    if (isActive) {
+      areas.add(xPos+37, yPos-15, xPos+50, yPos-4);
+      areas.add(xPos+37, yPos-3, xPos+50, yPos+7);
+    }
   }
 
   void decrementValue() {
@@ -66,18 +75,26 @@ class Spinner {
     }
     textAlign(LEFT);
     textFont(spinnerFont);
-    text(String.format("%02d", value), xPos, yPos);
+    text(labels.twoDigits(value), xPos, yPos);
 
-    // Draw boxes
+    // Draw boxes (retained shape with OpenGL)
     noFill();
     strokeWeight(2);
-    stroke(inactiveColour);
-    rect(xPos-2, yPos-17, 53, 20);
-    line(xPos+37, yPos-16, xPos+37, yPos+2);
-    line(xPos+38, yPos-7, xPos+50, yPos-7);
+    if (g.isGL()) {
+      if (boxShape == null) {
+        boxShape = layerCache.renderSpinnerBox(inactiveColour);
+      }
+      shape(boxShape, xPos, yPos);
+    } else {
+      stroke(inactiveColour);
+      rect(xPos-2, yPos-17, 53, 20);
+      line(xPos+37, yPos-16, xPos+37, yPos+2);
+      line(xPos+38, yPos-7, xPos+50, yPos-7);
+    }
 
     // Draw up arrow (highlight on mouseover)
-    if (isActive && mouseX >= xPos+37 && mouseX <= xPos+50 && mouseY >= yPos-15 && mouseY <= yPos-4) {
+    int hovered = hoveredArrow(mouseX, mouseY);
+    if (hovered == UP) {
       stroke(activeColour);
     } else {
       stroke(inactiveColour);
@@ -86,7 +103,7 @@ class Spinner {
     line(xPos+44, yPos-14, xPos+48, yPos-10);
 
     // Draw down arrow
-    if (isActive && mouseX >= xPos+37 && mouseX <= xPos+50 && mouseY > yPos-4 && mouseY <= yPos+7) {
+    if (hovered == DOWN) {
       stroke(activeColour);
     } else {
       stroke(inactiveColour);
@@ -100,6 +117,16 @@ class Spinner {
     return value;
   }
 
+  int hoveredArrow(int pointerX, int pointerY) {
+    // Returns UP or DOWN if pointer is over an arrow, otherwise 0
+    if (isActive && pointerX >= xPos+37 && pointerX <= xPos+50 && pointerY >= yPos-15 && pointerY <= yPos-4) {
+      return UP;
+    } else if (isActive && pointerX >= xPos+37 && pointerX <= xPos+50 && pointerY > yPos-4 && pointerY <= yPos+7) {
+      return DOWN;
+    }
+    return 0;
+  }
+
   void incrementValue() {
     // Increment and constrain
     value += step;
@@ -117,9 +144,10 @@ class Spinner {
 
   void respond(int clickX, int clickY) {
     // Increment or decrement value if arrow is clicked
-    if (isActive && clickX >= xPos+37 && clickX <= xPos+50 && clickY >= yPos-15 && clickY <= yPos-4) {
+    int clicked = hoveredArrow(clickX, clickY);
+    if (clicked == UP) {
       incrementValue();
-    } else if (isActive && clickX >= xPos+37 && clickX <= xPos+50 && clickY > yPos-4 && clickY <= yPos+7) {
+    } else if (clicked == DOWN) {
       decrementValue();
     }
   }
@@ -0,0 +1,147 @@
+//
+//    IceTimer - Graphical timer and match scheduler for pick-up ice hockey
+//    Copyright (C) 2014–2015 Joe Cridge
+//
+//    This file is part of IceTimer.
+//
+//    IceTimer is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    IceTimer is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with IceTimer.  If not, see <http://www.gnu.org/licenses/>.
+//
+//    Joe Cridge, February 2015.
+//    <joe.cridge@me.com>
+//
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Packs the fixture lists in data/nsim-nteams into a single binary file which
+ * IceTimer can memory-map at runtime instead of parsing CSV files. The CSV
+ * files remain the editable source, so run this again after changing them.
+ * IceTimer checks each list against a checksum of its CSV file, and reads the
+ * CSV file instead of any list which is out of date.
+ *
+ *   javac -encoding UTF-8 -d tools tools/BundleFixtures.java
+ *   java -cp tools BundleFixtures data/nsim-nteams data/fixtures.bin
+ *
+ * File layout (big-endian):
+ *
+ *   int    magic 'ICEF'
+ *   short  format version
+ *   short  number of lists
+ *   then for each list:
+ *     byte   nSim
+ *     byte   nTeams
+ *     short  number of rows
+ *     int    offset of team data from start of file
+ *     int    CRC-32 of the CSV file the list was read from
+ *   then for each list, rows x 2*nSim shorts of team numbers
+ */
+public class BundleFixtures {
+  static final int MAGIC = 0x49434546;
+  static final int VERSION = 2;
+  static final int HEADER_BYTES = 8;
+  static final int ENTRY_BYTES = 12;
+  static final Pattern FILE_NAME = Pattern.compile("(\\d+)-(\\d+)\\.csv");
+
+  static class FixtureList {
+    int nSim, nTeams, checksum;
+    ArrayList<short[]> rows = new ArrayList<short[]>();
+  }
+
+  public static void main(String[] args) throws IOException {
+    File sourceDir = new File(args.length > 0 ? args[0] : "data/nsim-nteams");
+    File outFile = new File(args.length > 1 ? args[1] : "data/fixtures.bin");
+
+    // Read every list, sorted by file name so that output is reproducible
+    File[] files = sourceDir.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot read fixture directory " + sourceDir);
+    }
+    Arrays.sort(files);
+    ArrayList<FixtureList> lists = new ArrayList<FixtureList>();
+    for (File file : files) {
+      Matcher m = FILE_NAME.matcher(file.getName());
+      if (m.matches()) {
+        lists.add(readList(file, Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))));
+      }
+    }
+
+    // Write header and index, then team data
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(outFile));
+    try {
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+      out.writeShort(lists.size());
+      int offset = HEADER_BYTES + ENTRY_BYTES*lists.size();
+      for (FixtureList list : lists) {
+        out.writeByte(list.nSim);
+        out.writeByte(list.nTeams);
+        out.writeShort(list.rows.size());
+        out.writeInt(offset);
+        out.writeInt(list.checksum);
+        offset += 2 * 2*list.nSim * list.rows.size();
+      }
+      for (FixtureList list : lists) {
+        for (short[] row : list.rows) {
+          for (short team : row) {
+            out.writeShort(team);
+          }
+        }
+      }
+    } finally {
+      out.close();
+    }
+    System.out.println("Wrote " + lists.size() + " fixture lists to " + outFile);
+  }
+
+  static FixtureList readList(File file, int nSim, int nTeams) throws IOException {
+    FixtureList list = new FixtureList();
+    list.nSim = nSim;
+    list.nTeams = nTeams;
+    CRC32 crc = new CRC32();
+    crc.update(Files.readAllBytes(file.toPath()));
+    list.checksum = (int) crc.getValue();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        String[] fields = line.trim().split(",");
+        if (fields.length != 2*nSim) {
+          throw new IOException(file + ": expected " + 2*nSim + " teams per row but found " + fields.length);
+        }
+        short[] row = new short[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+          row[i] = Short.parseShort(fields[i].trim());
+        }
+        list.rows.add(row);
+      }
+    } finally {
+      reader.close();
+    }
+    return list;
+  }
+}